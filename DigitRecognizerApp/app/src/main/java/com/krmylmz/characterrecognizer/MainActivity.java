@@ -3,6 +3,7 @@ package com.krmylmz.characterrecognizer;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Color;
@@ -17,10 +18,19 @@ import android.view.MenuInflater;
 import android.view.View;
 import android.widget.TextView;
 
+import com.krmylmz.characterrecognizer.batch.ReplayHarness;
+import com.krmylmz.characterrecognizer.camera.CameraActivity;
+import com.krmylmz.characterrecognizer.debug.DebugCapture;
+import com.krmylmz.characterrecognizer.drawing.CanvasSnapshot;
+import com.krmylmz.characterrecognizer.drawing.DrawPath;
 import com.krmylmz.characterrecognizer.drawing.DrawView;
+import com.krmylmz.characterrecognizer.drawing.StrokeRenderWorker;
 import com.krmylmz.characterrecognizer.models.Classification;
 import com.krmylmz.characterrecognizer.models.Classifier;
 import com.krmylmz.characterrecognizer.models.TensorFlowClassifier;
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+import com.krmylmz.characterrecognizer.recording.RecognitionLog;
+import com.krmylmz.characterrecognizer.tracing.StageTracer;
 
 import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.LoaderCallbackInterface;
@@ -32,10 +42,13 @@ import org.opencv.core.Size;
 import org.tensorflow.Tensor;
 import org.tensorflow.contrib.android.TensorFlowInferenceInterface;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -45,6 +58,11 @@ public class MainActivity extends Activity {
 
     // MNIST dataset property
     private static final int PIXEL_WIDTH = 28;
+    private static final int DRAWING_WIDTH = 20;
+
+    // true: take the model input kept up to date by mRenderWorker (processStrokes)
+    // false: preprocess the inked part of the canvas bitmap (processBitmap)
+    private static final boolean RASTERIZE_STROKES = true;
 
     // UI Elements
     private DrawView drawView;
@@ -56,6 +74,36 @@ public class MainActivity extends Activity {
     // Float array of pixels for processed bitmap, will be fed into the model
     private float[] fPixels;
 
+    // rasterises the strokes into the model input off the UI thread
+    private StrokeRenderWorker mRenderWorker;
+
+    // longest wait for the worker to catch up with the last touch event
+    private static final long RENDER_WAIT_MS = 50;
+
+    // Debug builds save model inputs to externalStorage/Pictures/capture.bin,
+    // release builds compile the capture out
+    private static final boolean DEBUG_CAPTURE = BuildConfig.DEBUG;
+    private static final int CAPTURE_SAMPLE_EVERY = 1;
+    private static final int CAPTURE_QUEUE_SIZE = 16;
+    private DebugCapture mCapture;
+    // and the strokes of every detect with model 0's label to strokes.bin, a stroke log
+    // for ReplayHarness; a few KB per drawing, written on the UI thread
+    private DataOutputStream mStrokeLog;
+
+    // every recognition is recorded to filesDir/recognitions for offline analysis,
+    // stages: preprocessing, inference; the newest segments (about 3.6 MB each) are kept
+    private static final int RECOGNITION_LOG_SEGMENTS = 4;
+    private static final int STAGE_PREPROCESS = 0;
+    private static final int STAGE_INFERENCE = 1;
+    private RecognitionLog mRecognitionLog;
+    private final long[] mStageNanos = new long[2];
+
+    // per stage latency histograms of detect, long press the result text to see them
+    private final StageTracer mTracer = new StageTracer();
+    private final CanvasSnapshot mSnapshot = new CanvasSnapshot();
+    // the whole canvas resized to PIXEL_WIDTH x PIXEL_WIDTH, see processBitmap
+    private final byte[] mResizedCanvas = new byte[PIXEL_WIDTH * PIXEL_WIDTH];
+
 // TODO: Can we do it without native part?? for size reduction
 //    static {
 //        System.loadLibrary("native-lib");
@@ -75,10 +123,27 @@ public class MainActivity extends Activity {
         drawView = findViewById(R.id.drawView);
         textView = findViewById(R.id.resultText);
 
+        textView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                String dump = mTracer.dump();
+                Log.i("StageTracer", dump);
+                textView.setText(dump);
+                return true;
+            }
+        });
+
         DisplayMetrics metrics = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(metrics);
 
-        drawView.init(metrics);
+        // the drawing is black on white, a single channel canvas is enough
+        drawView.init(metrics, true);
+
+        if (RASTERIZE_STROKES) {
+            mRenderWorker = new StrokeRenderWorker(DrawPath.getStrokeWidth(), metrics.widthPixels);
+            mRenderWorker.start();
+            drawView.setRenderWorker(mRenderWorker);
+        }
 
         // check if api > 23
         if(Build.VERSION.SDK_INT > 23)
@@ -94,6 +159,52 @@ public class MainActivity extends Activity {
         }
 
         loadModel();
+
+        try {
+            mRecognitionLog = new RecognitionLog(new File(getFilesDir(), "recognitions"),
+                    RECOGNITION_LOG_SEGMENTS);
+        } catch (IOException e) {
+            Log.i("RecognitionLog", "disabled: " + e.getMessage());
+        }
+
+        if (DEBUG_CAPTURE) {
+            try {
+                mCapture = new DebugCapture(
+                        new File(Environment.getExternalStorageDirectory().getPath() + "/Pictures/capture.bin"),
+                        PIXEL_WIDTH, PIXEL_WIDTH, CAPTURE_SAMPLE_EVERY, CAPTURE_QUEUE_SIZE);
+            } catch (IOException e) {
+                // e.g. no storage permission yet, run without capture
+                Log.i("DebugCapture", "disabled: " + e.getMessage());
+            }
+            try {
+                mStrokeLog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                        Environment.getExternalStorageDirectory().getPath() + "/Pictures/strokes.bin", true)));
+            } catch (IOException e) {
+                Log.i("StrokeLog", "disabled: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mRenderWorker != null) {
+            drawView.setRenderWorker(null);
+            mRenderWorker.stop();
+        }
+        if (DEBUG_CAPTURE && mCapture != null) {
+            mCapture.close();
+        }
+        if (DEBUG_CAPTURE && mStrokeLog != null) {
+            try {
+                mStrokeLog.close();
+            } catch (IOException e) {
+                Log.i("StrokeLog", "close failed: " + e.getMessage());
+            }
+        }
+        if (mRecognitionLog != null) {
+            mRecognitionLog.close();
+        }
+        super.onDestroy();
     }
 
     /**
@@ -106,91 +217,98 @@ public class MainActivity extends Activity {
         textView .setText("");
     }
 
+    /**
+     * Opens the camera recognition screen.
+     * @param v necessary for being an onClick function (for cameraButton)
+     */
+    public void openCamera(View v) {
+        startActivity(new Intent(this, CameraActivity.class));
+    }
+
     /**
      * The drawView canvas is width*width according to your phone model. However,
      * MNIST dataset is formed by 28x28 images with three specifications:
      *      1. The drawing is black with white background.
      *      2. The drawing part is 20x20 and its in the center.
      *      3. Around the drawing(20x20) there is white padding to make it 28x28.
+     *
+     * The whole canvas is resized to 28x28 first, then the drawing is found, scaled and
+     * padded in the 28x28 image. Only the inked part of the canvas is read, into the reused
+     * mSnapshot buffers, the rest is background; nothing is done if the drawing didn't
+     * change since the last call.
      */
     public void processBitmap() {
 
-        Preprocessor preprocessor = new Preprocessor(drawView.getBitmap(), 28);
-
-        Mat resizedMat = preprocessor.resize();
-        Bitmap resizedBitmap = preprocessor.matToBitmap(resizedMat);
-
-        double[] bgColor = {255,255,255};
-        int[] rowBounds = preprocessor.getMatBoundariesVertical(bgColor);
-        int[] colBounds = preprocessor.getMatBoundariesHorizontal(bgColor);
-
-        Log.i("TODO_1:rowBound:0:upper", "" + rowBounds[0]);
-        Log.i("TODO_1:rowBound:1:lower", "" + rowBounds[1]);
-
-        Log.i("TODO_1:colBound:0:left", "" + colBounds[0]);
-        Log.i("TODO_1:colBound:1:right", "" + colBounds[1]);
-
-        resizedMat = preprocessor.scale(colBounds[0], colBounds[1], rowBounds[0], rowBounds[1], 20);
-
-        resizedBitmap = preprocessor.matToBitmap(resizedMat);
-
-        Bitmap finalBitmap = preprocessor.fillBackground();
-
-        saveBitmapForDebugging(resizedBitmap, "resized");
-        // save bitmap for debugging ROFL
-        saveBitmapForDebugging(finalBitmap, "final");
-
-        // initialize pixel array (for int 28x28)
-        int[] iPixels = new int[28 * 28];
-        finalBitmap.getPixels(iPixels, 0, 28, 0, 0, 28, 28);
+        if (fPixels == null) {
+            fPixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+        }
 
+        long start = mTracer.start();
+        if (!drawView.snapshot(mSnapshot)) {
+            // fPixels is still the current drawing
+            return;
+        }
+        start = mTracer.end(StageTracer.SNAPSHOT, start);
 
-        // convert the int pixels to float pixels & divide by 255.0
-        fPixels = new float[iPixels.length];
-        for (int i = 0; i < iPixels.length; ++i) {
-            // Set 0 for white and 255 for black pixel
-            int pix = iPixels[i];
-            int b = pix & 0xff; // filter with 255
-            fPixels[i] = (float) ((0xff - b) / 255.0);
+        if (mSnapshot.isEmpty()) {
+            Arrays.fill(fPixels, 0);
+            return;
         }
 
+        PixelPreprocessor.resizeCanvas(mSnapshot.getGray(), mSnapshot.getLeft(), mSnapshot.getTop(),
+                mSnapshot.getWidth(), mSnapshot.getHeight(), mSnapshot.getCanvasWidth(),
+                mSnapshot.getCanvasHeight(), 255, PIXEL_WIDTH, mResizedCanvas);
+        Preprocessor preprocessor = new Preprocessor(mResizedCanvas, PIXEL_WIDTH, PIXEL_WIDTH, PIXEL_WIDTH);
+        mTracer.end(StageTracer.BITMAP_TO_MAT, start);
+
+        preprocessor.setTracer(mTracer);
+        preprocessor.toPixels(255, DRAWING_WIDTH, fPixels, 0);
+        preprocessor.getMat().release();
     }
 
     /**
-     * Takes the processed bitmap and saves it to externalStorage/Documents/test.png
-     * Only the last detected bitmap stays, i.e. always overwrites previous file if exists.
-     * @param bitmap the new processed bitmap (28x28) to be saved
+     * Like processBitmap, but the strokes are drawn straight into the 28x28 input, fitted
+     * to the 20x20 center, without reading the canvas bitmap at all. The input is not the
+     * same: the strokes are fitted at full resolution, while processBitmap finds and
+     * scales the drawing in the canvas already resized to 28x28.
+     * mRenderWorker already did it on its thread while drawing, the input is only copied.
+     * Falls back to processBitmap if the worker didn't catch up within RENDER_WAIT_MS.
      */
-    private void saveBitmapForDebugging(Bitmap bitmap, String name){
-        FileOutputStream out = null;
-        try {
-            out = new FileOutputStream(Environment.getExternalStorageDirectory().getPath() + "/Pictures/" + name +".png");
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-            // PNG is a lossless format, the compression factor (100) is ignored
+    public void processStrokes() {
+        if (fPixels == null) {
+            fPixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
         }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-        finally {
-            try {
-                if (out != null) {
-                    out.close();
-                }
-            }
-            catch (IOException e) {
-                e.printStackTrace();
-            }
+
+        long start = mTracer.start();
+        boolean current = mRenderWorker.awaitLatest(RENDER_WAIT_MS, fPixels);
+        mTracer.end(StageTracer.SNAPSHOT, start);
+
+        if (!current) {
+            // fPixels is an older drawing, read the canvas instead
+            Log.w("StrokeRenderWorker", "input not ready after " + RENDER_WAIT_MS + " ms, reading the canvas");
+            mSnapshot.invalidate();
+            processBitmap();
         }
     }
 
     /**
-     * A method that is called when detectButton is pressed. Calls processBitmap,
+     * A method that is called when detectButton is pressed. Calls processStrokes (or processBitmap),
      * makes the classification using Classifier class, prints it to the screen.
      * @param v necessary for being an onClick function (for detectButton)
      */
     public void detectClass(View v) {
 
-        processBitmap();
+        long start = System.nanoTime();
+        if (RASTERIZE_STROKES) {
+            processStrokes();
+        } else {
+            processBitmap();
+        }
+        mStageNanos[STAGE_PREPROCESS] = System.nanoTime() - start;
+
+        if (DEBUG_CAPTURE && mCapture != null) {
+            mCapture.capture(fPixels);
+        }
 
         // LOG
         Log.i("INFO", "start detectClass");
@@ -199,9 +317,21 @@ public class MainActivity extends Activity {
         String text = "Result: ";
 
         // For any number of classifiers u like
-        for (Classifier classifier : mClassifiers) {
+        for (int modelId = 0; modelId < mClassifiers.size(); ++modelId) {
+            Classifier classifier = mClassifiers.get(modelId);
+
             // recognize the image giving float flattened array of pixels
+            long inferenceStart = mTracer.start();
             final Classification res = classifier.recognize(fPixels);
+            long formatStart = mTracer.end(StageTracer.inference(modelId), inferenceStart);
+            mStageNanos[STAGE_INFERENCE] = formatStart - inferenceStart;
+
+            record(modelId, classifier, res);
+            if (DEBUG_CAPTURE && modelId == 0) {
+                recordStrokes(res);
+            }
+            formatStart = mTracer.start();
+
             // if classification fails, put a question mark (?)
 
             if (res.getLabel() == null) {
@@ -215,6 +345,7 @@ public class MainActivity extends Activity {
                                                         res.getLabel(),
                                                         res.getConf());
             }
+            mTracer.end(StageTracer.FORMAT, formatStart);
         }
 
         // Display the result to the user
@@ -224,6 +355,30 @@ public class MainActivity extends Activity {
         Log.i("INFO", "end detectClass");
     }
 
+    private void record(int modelId, Classifier classifier, Classification res) {
+        if (mRecognitionLog == null) {
+            return;
+        }
+        int label = (res.getLabel() == null) ? -1 : Integer.parseInt(res.getLabel());
+        try {
+            mRecognitionLog.append(fPixels, classifier.getLastScores(), label, modelId, mStageNanos);
+        } catch (IOException e) {
+            Log.i("RecognitionLog", "append failed: " + e.getMessage());
+        }
+    }
+
+
+    private void recordStrokes(Classification res) {
+        if (mStrokeLog == null || drawView.getStrokes().isEmpty()) {
+            return;
+        }
+        int label = (res.getLabel() == null) ? -1 : Integer.parseInt(res.getLabel());
+        try {
+            ReplayHarness.writeStrokeRecord(mStrokeLog, label, drawView.getStrokes());
+        } catch (IOException e) {
+            Log.i("StrokeLog", "append failed: " + e.getMessage());
+        }
+    }
 
     /**
      * Uses TensorFlowClassifier to load the pre-trained models for Android use.
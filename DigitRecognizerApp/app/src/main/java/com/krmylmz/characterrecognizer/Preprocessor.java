@@ -14,6 +14,10 @@ import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import com.krmylmz.characterrecognizer.tracing.StageTracer;
+
+import java.nio.ByteBuffer;
+
 public class Preprocessor {
 
     // Constants
@@ -23,6 +27,9 @@ public class Preprocessor {
     // Member variables
     private Mat matToBeProcessed;
 
+    // times the toPixels stages if set
+    private StageTracer tracer;
+
     //Ctors
     /**
      * Converts bitmapIn to Mat and stores it in matToBeProcessed
@@ -32,11 +39,74 @@ public class Preprocessor {
     public Preprocessor(Bitmap bitmapIn, int pixel_size){
         this.PIXEL_SIZE = pixel_size;
 
+        if (bitmapIn.getConfig() == Bitmap.Config.ALPHA_8) {
+            matToBeProcessed = alphaToGray(bitmapIn);
+            return;
+        }
+
         // convert bitmapIn to mat (for OpenCV operations)
         matToBeProcessed= new Mat(bitmapIn.getWidth(), bitmapIn.getHeight(), CONFIG);
         Utils.bitmapToMat(bitmapIn, matToBeProcessed);
     }
 
+    /**
+     * Utils.bitmapToMat does not take ALPHA_8 bitmaps, so the alpha bytes are copied
+     * straight into a single channel Mat and inverted to gray = 255 - alpha,
+     * i.e. black drawing on white background. No RGBA Mat is created.
+     * @param alphaBitmap ALPHA_8 bitmap, ink as alpha
+     * @return CV_8UC1 mat, use the single channel (int) getMatBoundaries* with it
+     */
+    private static Mat alphaToGray(Bitmap alphaBitmap){
+
+        int width = alphaBitmap.getWidth();
+        int height = alphaBitmap.getHeight();
+        int rowBytes = alphaBitmap.getRowBytes();
+
+        byte[] alpha = new byte[rowBytes * height];
+        alphaBitmap.copyPixelsToBuffer(ByteBuffer.wrap(alpha));
+
+        // rows may be padded, keep the padding out of the mat
+        Mat padded = new Mat(height, rowBytes, CvType.CV_8UC1);
+        padded.put(0, 0, alpha);
+
+        Mat gray = new Mat(height, width, CvType.CV_8UC1);
+        Core.bitwise_not(padded.colRange(0, width), gray);
+        padded.release();
+
+        return gray;
+    }
+
+    /**
+     * Uses grayIn directly as matToBeProcessed, no color conversion or copy is made.
+     * Meant for single channel (CV_8UC1) input such as the camera Y plane.
+     * @param grayIn single channel mat, black drawing on white background
+     * @param pixel_size the pixel size that all the operations will be scaled to
+     */
+    public Preprocessor(Mat grayIn, int pixel_size){
+        this.PIXEL_SIZE = pixel_size;
+        matToBeProcessed = grayIn;
+    }
+
+    /**
+     * Wraps gray pixels, e.g. a CanvasSnapshot, in a single channel Mat.
+     * @param gray pixels row by row, black drawing on white background,
+     *             only the first width * height values are used
+     * @param pixel_size the pixel size that all the operations will be scaled to
+     */
+    public Preprocessor(byte[] gray, int width, int height, int pixel_size){
+        this.PIXEL_SIZE = pixel_size;
+        matToBeProcessed = new Mat(height, width, CvType.CV_8UC1);
+        matToBeProcessed.put(0, 0, gray);
+    }
+
+    /**
+     * Times the bounds, scale, pad and pixels stages of toPixels.
+     * @param tracer null to stop tracing
+     */
+    public void setTracer(StageTracer tracer) {
+        this.tracer = tracer;
+    }
+
     /**
      * Returns matToBeProcessed
      * @return matToBeProcessed
@@ -446,4 +516,172 @@ public class Preprocessor {
         return matToBitmap(matToBeProcessed);
     }
 
+
+    /**
+     * Single channel version of getMatBoundariesVertical(double[]).
+     * Reads a whole row at once instead of a double[] per pixel.
+     *
+     * @param backgroundGray background value in range (0, 255)
+     * @return the upper and lower bounds of drawing
+     */
+    public int[] getMatBoundariesVertical(int backgroundGray){
+
+        int rows = matToBeProcessed.rows();
+        int cols = matToBeProcessed.cols();
+        byte[] rowData = new byte[cols];
+
+        int[] rowBounds = {0, rows - 1};
+
+        for (int row = 0; row < rows; ++row) {
+            matToBeProcessed.get(row, 0, rowData);
+            if (!isBackground(rowData, cols, backgroundGray)) {
+                rowBounds[0] = row;
+                break;
+            }
+        }
+
+        for (int row = rows - 1; row >= 0; --row) {
+            matToBeProcessed.get(row, 0, rowData);
+            if (!isBackground(rowData, cols, backgroundGray)) {
+                rowBounds[1] = row;
+                break;
+            }
+        }
+
+        return rowBounds;
+    }
+
+    /**
+     * Single channel version of getMatBoundariesHorizontal(double[]).
+     *
+     * @param backgroundGray background value in range (0, 255)
+     * @return the left and right bounds of drawing
+     */
+    public int[] getMatBoundariesHorizontal(int backgroundGray){
+
+        int rows = matToBeProcessed.rows();
+        int cols = matToBeProcessed.cols();
+        byte[] rowData = new byte[cols];
+
+        // a column is background only if it is background in every row
+        int left = cols;
+        int right = -1;
+        for (int row = 0; row < rows; ++row) {
+            matToBeProcessed.get(row, 0, rowData);
+            for (int col = 0; col < cols; ++col) {
+                if ((rowData[col] & 0xff) != backgroundGray) {
+                    if (col < left) left = col;
+                    if (col > right) right = col;
+                }
+            }
+        }
+
+        if (right < 0) {
+            return new int[]{0, cols - 1};
+        }
+        return new int[]{left, right};
+    }
+
+    private static boolean isBackground(byte[] data, int length, int backgroundGray){
+        for (int i = 0; i < length; ++i) {
+            if ((data[i] & 0xff) != backgroundGray) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whole single channel pipeline: bounds, scale, padding and pixel extraction.
+     * Same steps as processBitmap does with getMatBoundaries*, scale and fillBackground,
+     * but without logging, so it also runs on a plain JVM.
+     *
+     * @param backgroundGray background value in range (0, 255)
+     * @param pixel size of the longer side of the scaled drawing
+     * @param pixelsOut float array for the model input
+     * @param offset index of the first pixel in pixelsOut
+     */
+    public void toPixels(int backgroundGray, int pixel, float[] pixelsOut, int offset){
+
+        long start = (tracer != null) ? tracer.start() : 0;
+
+        int[] rowBounds = getMatBoundariesVertical(backgroundGray);
+        int[] colBounds = getMatBoundariesHorizontal(backgroundGray);
+
+        // same magic values as scale()
+        int y1 = (rowBounds[0] >= 1) ? rowBounds[0] - 1 : 0;
+        int y2 = (rowBounds[1] <= matToBeProcessed.rows() - 1) ? rowBounds[1] + 1 : matToBeProcessed.rows();
+        int x1 = (colBounds[0] >= 1) ? colBounds[0] - 1 : 0;
+        int x2 = (colBounds[1] <= matToBeProcessed.cols() - 1) ? colBounds[1] + 1 : matToBeProcessed.cols();
+        start = trace(StageTracer.BOUNDS, start);
+
+        Mat subMat = matToBeProcessed.submat(y1, y2, x1, x2);
+
+        double scale = pixel * 1.0 / Math.max(x2 - x1 + 1, y2 - y1 + 1);
+        Size newSize = new Size(subMat.width() * scale, subMat.height() * scale);
+        Mat newMat = new Mat(newSize, CONFIG);
+        Imgproc.resize(subMat, newMat, newSize);
+        subMat.release();
+
+        matToBeProcessed = newMat;
+        start = trace(StageTracer.SCALE, start);
+
+        padBackground();
+        start = trace(StageTracer.PAD, start);
+
+        getPixels(pixelsOut, offset);
+        trace(StageTracer.PIXELS, start);
+    }
+
+    private long trace(int stage, long start){
+        return (tracer != null) ? tracer.end(stage, start) : 0;
+    }
+
+    /**
+     * Same padding as fillBackground() but keeps the result as a Mat,
+     * so no Bitmap is created.
+     * @return padded matToBeProcessed (PIXEL_SIZE x PIXEL_SIZE)
+     */
+    public Mat padBackground(){
+
+        int yLength = matToBeProcessed.rows();
+        int xLength = matToBeProcessed.cols();
+
+        int fillTop = (PIXEL_SIZE - yLength + 1) / 2;
+        int fillBottom = (PIXEL_SIZE - yLength) / 2;
+        int fillLeft = (PIXEL_SIZE - xLength + 1) / 2;
+        int fillRight = (PIXEL_SIZE - xLength) / 2;
+
+        Core.copyMakeBorder(matToBeProcessed, matToBeProcessed, fillTop, fillBottom, fillLeft, fillRight, Core.BORDER_CONSTANT, Scalar.all(255));
+
+        return matToBeProcessed;
+    }
+
+    /**
+     * Writes single channel matToBeProcessed into pixelsOut as model input,
+     * 0 for white and 1 for black pixels.
+     * @param pixelsOut float array of at least rows * cols length
+     */
+    public void getPixels(float[] pixelsOut){
+        getPixels(pixelsOut, 0);
+    }
+
+    /**
+     * getPixels for batches, writes starting from offset of pixelsOut
+     * @param pixelsOut float array of at least offset + rows * cols length
+     * @param offset index of the first pixel in pixelsOut
+     */
+    public void getPixels(float[] pixelsOut, int offset){
+
+        int length = matToBeProcessed.rows() * matToBeProcessed.cols();
+        byte[] data = new byte[length];
+
+        Mat continuous = matToBeProcessed.isContinuous() ? matToBeProcessed : matToBeProcessed.clone();
+        continuous.get(0, 0, data);
+
+        for (int i = 0; i < length; ++i) {
+            pixelsOut[offset + i] = (0xff - (data[i] & 0xff)) / 255.0f;
+        }
+    }
+
 }
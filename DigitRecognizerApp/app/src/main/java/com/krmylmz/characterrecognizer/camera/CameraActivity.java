@@ -0,0 +1,157 @@
+package com.krmylmz.characterrecognizer.camera;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.CompoundButton;
+import android.widget.Switch;
+import android.widget.TextView;
+
+import com.krmylmz.characterrecognizer.R;
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+import com.krmylmz.characterrecognizer.models.TensorFlowClassifier;
+
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.OpenCVLoader;
+import org.opencv.core.Rect;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class CameraActivity extends Activity implements CameraRecognizer.Listener {
+
+    // boolean extra, starts in multi digit mode
+    public static final String EXTRA_MULTI_DIGIT = "com.krmylmz.characterrecognizer.MULTI_DIGIT";
+
+    // MNIST dataset property
+    private static final int PIXEL_WIDTH = 28;
+
+    // UI Elements
+    private CameraBridgeViewBase cameraView;
+    private TextView textView;
+    private Switch multiDigitSwitch;
+
+    private CameraRecognizer mRecognizer;
+
+    // Classifiers are added from the loader thread while frames are being processed
+    private List<Classifier> mClassifiers = new CopyOnWriteArrayList<>();
+
+    static {
+        if (!OpenCVLoader.initDebug()) {
+            Log.i("ERROR_OpenCV", "OpenCV is not successfully loaded!");
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        setContentView(R.layout.activity_camera);
+
+        cameraView = findViewById(R.id.cameraView);
+        textView = findViewById(R.id.cameraResultText);
+        multiDigitSwitch = findViewById(R.id.multiDigitSwitch);
+
+        boolean multiDigit = getIntent().getBooleanExtra(EXTRA_MULTI_DIGIT, false);
+        mRecognizer = new CameraRecognizer(mClassifiers, this);
+        mRecognizer.setMultiDigit(multiDigit);
+        cameraView.setCvCameraViewListener(mRecognizer);
+
+        multiDigitSwitch.setChecked(multiDigit);
+        multiDigitSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                mRecognizer.setMultiDigit(isChecked);
+                textView.setText("");
+            }
+        });
+
+        // check if api > 23
+        if (Build.VERSION.SDK_INT > 23) {
+            //124 is just an ID for the request, no magic number
+            int REQUEST_CODE_ASK_PERMISSIONS = 124;
+
+            if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+                requestPermissions(new String[]{Manifest.permission.CAMERA},
+                        REQUEST_CODE_ASK_PERMISSIONS);
+            }
+        }
+
+        loadModel();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        cameraView.enableView();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        cameraView.disableView();
+    }
+
+    @Override
+    public void onRecognized(final Classifier classifier, final Classification res) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (res.getLabel() == null) {
+                    textView.setText(classifier.name() + ": ?");
+                } else {
+                    textView.setText(String.format(Locale.ENGLISH, "%s: %s, %f",
+                            classifier.name(), res.getLabel(), res.getConf()));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDigitsRecognized(final List<Rect> boxes, final Classification[][] results) {
+        if (results.length == 0) {
+            return;
+        }
+
+        // every digit in view with the first classifier in reading order, ? if classification fails
+        final StringBuilder text = new StringBuilder();
+        for (Classification res : results[0]) {
+            text.append(res.getLabel() == null ? "?" : res.getLabel());
+        }
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                textView.setText(text.toString());
+            }
+        });
+    }
+
+    /**
+     * Loads the same model as MainActivity on a background thread.
+     */
+    private void loadModel() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mClassifiers.add(
+                            TensorFlowClassifier.create(getAssets(), "",
+                                    "opt_1608_mnist_convnet.pb", "labels.txt", PIXEL_WIDTH,
+                                    "conv2d_7_input", "dense_6/Softmax", false));
+                }
+
+                catch (final Exception e) {
+                    //if they aren't found, throw an error!
+                    throw new RuntimeException("Error initializing classifiers!", e);
+                }
+            }
+        }).start();
+    }
+}
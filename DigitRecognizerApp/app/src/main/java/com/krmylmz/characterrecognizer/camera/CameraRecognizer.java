@@ -0,0 +1,286 @@
+package com.krmylmz.characterrecognizer.camera;
+
+import com.krmylmz.characterrecognizer.Preprocessor;
+import com.krmylmz.characterrecognizer.detection.DigitLocalizer;
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
+import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camera recognition path. Works only on the luminance (Y plane) of the frame,
+ * i.e. CvCameraViewFrame.gray(), which is a submat of the camera buffer and needs
+ * no color conversion. ROI cropping, downscaling and binarisation are all done on it.
+ * RGBA conversion is only made for the preview and only when color preview is enabled.
+ * Classifiers only run when ChangeDetector reports a scene change, otherwise the last
+ * result delivered to the Listener stays valid. Once a digit is recognised with enough
+ * confidence its box is followed by DigitTracker and it is only re-classified when the
+ * track is lost, drifts or its confidence ages out.
+ * In multi digit mode the digits in the ROI are found by DigitLocalizer and the untracked
+ * ones are classified in one batch.
+ */
+public class CameraRecognizer implements CvCameraViewListener2 {
+
+    // MNIST dataset property
+    private static final int PIXEL_WIDTH = 28;
+    private static final int DRAWING_WIDTH = 20;
+
+    // ROI is downscaled to this size before binarisation
+    private static final int WORK_SIZE = PIXEL_WIDTH * 4;
+
+    // ROI side relative to the shorter frame side
+    private static final double ROI_RATIO = 0.6;
+
+    // minimum number of ink pixels in the working ROI to run the classifiers
+    private static final int MIN_INK_PIXELS = 30;
+
+    // mean absolute block difference of the working ROI that triggers recognition
+    private static final double CHANGE_THRESHOLD = 6.0;
+
+    // results at least this confident are tracked instead of re-classified
+    private static final double TRACK_MIN_CONF = 0.8;
+
+    /**
+     * Receives the classification results, called on the camera worker thread.
+     */
+    public interface Listener {
+        void onRecognized(Classifier classifier, Classification result);
+
+        /**
+         * Multi digit mode, every digit in the ROI: tracked ones with the results of their
+         * track, the others newly classified.
+         * @param boxes digit boxes in the working ROI, left to right
+         * @param results results[classifier index][box index]
+         */
+        void onDigitsRecognized(List<Rect> boxes, Classification[][] results);
+    }
+
+    private final List<Classifier> mClassifiers;
+    private final Listener mListener;
+
+    private boolean mColorPreview = false;
+    private boolean mMultiDigit = false;
+    // set from the UI thread, applied on the camera thread
+    private volatile boolean mMultiDigitRequested = false;
+    private DigitLocalizer mLocalizer;
+    private ChangeDetector mChangeDetector;
+    private DigitTracker mTracker;
+
+    // Reused buffers, allocated in onCameraViewStarted
+    private Mat mWorkMat;
+    private Mat mBinaryMat;
+    private Size mWorkSize;
+    private float[] fPixels;
+
+    // ROI in frame coordinates
+    private int mRoiX, mRoiY, mRoiSize;
+    private Point mRoiTopLeft;
+    private Point mRoiBottomRight;
+
+    public CameraRecognizer(List<Classifier> classifiers, Listener listener) {
+        mClassifiers = classifiers;
+        mListener = listener;
+    }
+
+    /**
+     * If enabled, preview is the RGBA frame; otherwise the gray frame is shown
+     * and no YUV to RGBA conversion is made at all.
+     */
+    public void setColorPreview(boolean colorPreview) {
+        mColorPreview = colorPreview;
+    }
+
+    /**
+     * If enabled, every digit in the ROI is localised and classified instead of a single one.
+     */
+    public void setMultiDigit(boolean multiDigit) {
+        mMultiDigitRequested = multiDigit;
+    }
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        mRoiSize = (int) (Math.min(width, height) * ROI_RATIO);
+        mRoiX = (width - mRoiSize) / 2;
+        mRoiY = (height - mRoiSize) / 2;
+        mRoiTopLeft = new Point(mRoiX, mRoiY);
+        mRoiBottomRight = new Point(mRoiX + mRoiSize, mRoiY + mRoiSize);
+
+        mWorkMat = new Mat(WORK_SIZE, WORK_SIZE, CvType.CV_8UC1);
+        mBinaryMat = new Mat(WORK_SIZE, WORK_SIZE, CvType.CV_8UC1);
+        mWorkSize = new Size(WORK_SIZE, WORK_SIZE);
+        mChangeDetector = new ChangeDetector(CHANGE_THRESHOLD);
+        mTracker = new DigitTracker(TRACK_MIN_CONF);
+        mLocalizer = new DigitLocalizer();
+        fPixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+    }
+
+    @Override
+    public void onCameraViewStopped() {
+        if (mWorkMat != null) {
+            mWorkMat.release();
+            mBinaryMat.release();
+            mChangeDetector.release();
+            mTracker.release();
+            mLocalizer.release();
+        }
+    }
+
+    @Override
+    public Mat onCameraFrame(CvCameraViewFrame inputFrame) {
+        Mat gray = inputFrame.gray();
+
+        // submat does not copy, downscale first so the rest works on a small image
+        Mat roi = gray.submat(mRoiY, mRoiY + mRoiSize, mRoiX, mRoiX + mRoiSize);
+        Imgproc.resize(roi, mWorkMat, mWorkSize, 0, 0, Imgproc.INTER_AREA);
+        roi.release();
+
+        // static scene, the last result is still valid
+        if (!mChangeDetector.hasChanged(mWorkMat)) {
+            return preview(inputFrame, gray);
+        }
+
+        // tracks of the other mode are not valid
+        if (mMultiDigit != mMultiDigitRequested) {
+            mMultiDigit = mMultiDigitRequested;
+            mTracker.clear();
+        }
+
+        mTracker.update(mWorkMat);
+        if (mMultiDigit) {
+            recognizeDigits();
+            return preview(inputFrame, gray);
+        }
+
+        // the tracked digit is still in view, its result is still valid
+        if (!mTracker.getTracks().isEmpty()) {
+            return preview(inputFrame, gray);
+        }
+
+        // dark digit on light paper -> black drawing on white background like drawView
+        Imgproc.threshold(mWorkMat, mBinaryMat, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+        if (WORK_SIZE * WORK_SIZE - Core.countNonZero(mBinaryMat) >= MIN_INK_PIXELS) {
+            recognize(mBinaryMat);
+        }
+
+        return preview(inputFrame, gray);
+    }
+
+    /**
+     * Same steps as MainActivity.processBitmap, but on the binary single channel mat.
+     * Confident results are handed to the tracker.
+     */
+    private void recognize(Mat binary) {
+        Preprocessor preprocessor = new Preprocessor(binary, PIXEL_WIDTH);
+
+        int[] rowBounds = preprocessor.getMatBoundariesVertical(255);
+        int[] colBounds = preprocessor.getMatBoundariesHorizontal(255);
+        Rect box = new Rect(colBounds[0], rowBounds[0],
+                colBounds[1] - colBounds[0] + 1, rowBounds[1] - rowBounds[0] + 1);
+
+        preprocessor.scale(colBounds[0], colBounds[1], rowBounds[0], rowBounds[1], DRAWING_WIDTH);
+        preprocessor.padBackground();
+        preprocessor.getPixels(fPixels);
+
+        Classification[] results = new Classification[mClassifiers.size()];
+        boolean confident = results.length > 0;
+        for (int i = 0; i < results.length; ++i) {
+            Classifier classifier = mClassifiers.get(i);
+            results[i] = classifier.recognize(fPixels);
+            confident &= results[i].getConf() >= TRACK_MIN_CONF;
+            mListener.onRecognized(classifier, results[i]);
+        }
+
+        if (confident) {
+            mTracker.addTrack(mWorkMat, box, results);
+        }
+    }
+
+    /**
+     * Localises the digits of the working ROI and classifies the untracked ones in one batch.
+     * The listener gets every digit in view, tracked ones with the results of their track.
+     */
+    private void recognizeDigits() {
+        List<Classifier> classifiers = new ArrayList<>(mClassifiers);
+        List<Rect> boxes = mLocalizer.locate(mWorkMat);
+
+        DigitTracker.Track[] tracks = new DigitTracker.Track[boxes.size()];
+        List<Rect> untracked = new ArrayList<>();
+        for (int i = 0; i < boxes.size(); ++i) {
+            DigitTracker.Track track = mTracker.getTrack(boxes.get(i));
+            // a track made before a classifier was loaded has no result for it
+            if (track != null && track.getResults().length == classifiers.size()) {
+                tracks[i] = track;
+            } else {
+                untracked.add(boxes.get(i));
+            }
+        }
+
+        Classification[][] newResults = untracked.isEmpty()
+                ? new Classification[classifiers.size()][0]
+                : mLocalizer.classify(mWorkMat, untracked, classifiers);
+
+        for (int i = 0; i < untracked.size(); ++i) {
+            Classification[] boxResults = new Classification[newResults.length];
+            boolean confident = newResults.length > 0;
+            for (int c = 0; c < newResults.length; ++c) {
+                boxResults[c] = newResults[c][i];
+                confident &= boxResults[c].getConf() >= TRACK_MIN_CONF;
+            }
+            if (confident) {
+                mTracker.addTrack(mWorkMat, untracked.get(i), boxResults);
+            }
+        }
+
+        // merge back in reading order
+        Classification[][] results = new Classification[classifiers.size()][boxes.size()];
+        for (int i = 0, u = 0; i < boxes.size(); ++i) {
+            for (int c = 0; c < classifiers.size(); ++c) {
+                results[c][i] = (tracks[i] != null) ? tracks[i].getResults()[c] : newResults[c][u];
+            }
+            if (tracks[i] == null) {
+                ++u;
+            }
+        }
+
+        mListener.onDigitsRecognized(boxes, results);
+    }
+
+    /**
+     * @return ratio of frames where recognition was skipped because the scene did not change
+     */
+    public double getSkipRate() {
+        return mChangeDetector == null ? 0 : mChangeDetector.getSkipRate();
+    }
+
+    /**
+     * @return number of frames where recognition was skipped because the scene did not change
+     */
+    public long getSkippedFrameCount() {
+        return mChangeDetector == null ? 0 : mChangeDetector.getSkippedCount();
+    }
+
+    private Mat preview(CvCameraViewFrame inputFrame, Mat gray) {
+        if (mColorPreview) {
+            Mat rgba = inputFrame.rgba();
+            Imgproc.rectangle(rgba, mRoiTopLeft, mRoiBottomRight, new Scalar(0, 255, 0, 255), 3);
+            return rgba;
+        }
+
+        // drawing on the Y plane is fine, the buffer is refilled by the next frame
+        Imgproc.rectangle(gray, mRoiTopLeft, mRoiBottomRight, Scalar.all(255), 3);
+        return gray;
+    }
+}
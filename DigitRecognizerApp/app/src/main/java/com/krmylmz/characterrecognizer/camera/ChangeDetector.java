@@ -0,0 +1,86 @@
+package com.krmylmz.characterrecognizer.camera;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap scene change detector for the downscaled grayscale ROI.
+ * The ROI is reduced to a GRID x GRID block-sum (block mean) signature, and the mean absolute
+ * difference to the reference signature is compared with a threshold. The reference is only
+ * updated when a change is reported, so slow drift still adds up to a change eventually.
+ */
+public class ChangeDetector {
+
+    private static final int GRID = 8;
+
+    // mean absolute block difference (0, 255) that counts as a change
+    private final double mThreshold;
+
+    private final Mat mSignatureMat = new Mat();
+    private final Size mSignatureSize = new Size(GRID, GRID);
+    private final byte[] mSignature = new byte[GRID * GRID];
+    private final byte[] mReference = new byte[GRID * GRID];
+    private boolean mHasReference = false;
+
+    // Metrics
+    private long mFrameCount = 0;
+    private long mSkippedCount = 0;
+
+    public ChangeDetector(double threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * @param gray single channel (CV_8UC1) image
+     * @return true if gray differs from the last changed frame by more than the threshold
+     */
+    public boolean hasChanged(Mat gray) {
+        ++mFrameCount;
+
+        // INTER_AREA gives the block means
+        Imgproc.resize(gray, mSignatureMat, mSignatureSize, 0, 0, Imgproc.INTER_AREA);
+        mSignatureMat.get(0, 0, mSignature);
+
+        if (mHasReference) {
+            int diff = 0;
+            for (int i = 0; i < mSignature.length; ++i) {
+                diff += Math.abs((mSignature[i] & 0xff) - (mReference[i] & 0xff));
+            }
+            if (diff <= mThreshold * mSignature.length) {
+                ++mSkippedCount;
+                return false;
+            }
+        }
+
+        System.arraycopy(mSignature, 0, mReference, 0, mSignature.length);
+        mHasReference = true;
+        return true;
+    }
+
+    /**
+     * Forces the next frame to be reported as changed.
+     */
+    public void reset() {
+        mHasReference = false;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * @return ratio of frames reported as unchanged, in range (0, 1)
+     */
+    public double getSkipRate() {
+        return mFrameCount == 0 ? 0 : (double) mSkippedCount / mFrameCount;
+    }
+
+    public void release() {
+        mSignatureMat.release();
+    }
+}
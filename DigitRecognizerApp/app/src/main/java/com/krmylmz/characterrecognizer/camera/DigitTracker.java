@@ -0,0 +1,291 @@
+package com.krmylmz.characterrecognizer.camera;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.SparsePyrLKOpticalFlow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tracks the boxes of recognised digits across frames with pyramidal Lucas-Kanade optical flow,
+ * so a digit is classified once and then followed instead of being re-classified every frame.
+ * A track has to be re-classified when it is lost (too few points followed), when it drifts
+ * (points move inconsistently) or when its confidence, decayed by age, drops below a threshold.
+ * All points of all tracks are followed with a single optical flow call per frame.
+ */
+public class DigitTracker {
+
+    private static final int MAX_POINTS_PER_TRACK = 20;
+    private static final int MIN_POINTS_PER_TRACK = 4;
+    private static final double FEATURE_QUALITY = 0.01;
+    private static final double FEATURE_MIN_DISTANCE = 2;
+
+    // median absolute deviation of point displacements (px) that counts as drift
+    private static final double MAX_DRIFT = 1.5;
+
+    // confidence is multiplied by this for every tracked frame
+    private static final double CONF_DECAY = 0.97;
+
+    /**
+     * A tracked digit box with the classifications made when the track started.
+     */
+    public static class Track {
+        private final Rect box;
+        private final Classification[] results;
+        private float[] points;
+        private int pointCount;
+        private int age = 0;
+        private boolean lost = false;
+
+        Track(Rect box, Classification[] results, float[] points, int pointCount) {
+            this.box = box;
+            this.results = results;
+            this.points = points;
+            this.pointCount = pointCount;
+        }
+
+        /**
+         * @return box in the coordinates of the tracked images
+         */
+        public Rect getBox() {
+            return box;
+        }
+
+        /**
+         * @return classifications in the order of the classifiers
+         */
+        public Classification[] getResults() {
+            return results;
+        }
+
+        /**
+         * @return number of frames tracked since the classification
+         */
+        public int getAge() {
+            return age;
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+
+        /**
+         * @return best confidence of the results, decayed by age
+         */
+        public double getConfidence() {
+            float conf = 0;
+            for (Classification res : results) {
+                conf = Math.max(conf, res.getConf());
+            }
+            return conf * Math.pow(CONF_DECAY, age);
+        }
+    }
+
+    private final double mMinConf;
+    private final List<Track> mTracks = new ArrayList<>();
+    private final SparsePyrLKOpticalFlow mFlow = SparsePyrLKOpticalFlow.create();
+
+    // Reused buffers
+    private final Mat mPrevGray = new Mat();
+    private final MatOfPoint2f mPrevPts = new MatOfPoint2f();
+    private final MatOfPoint2f mNextPts = new MatOfPoint2f();
+    private final MatOfByte mStatus = new MatOfByte();
+    private final MatOfPoint mCorners = new MatOfPoint();
+    private float[] mPtsBuffer = new float[0];
+    private byte[] mStatusBuffer = new byte[0];
+    private float[] mDx = new float[MAX_POINTS_PER_TRACK];
+    private float[] mDy = new float[MAX_POINTS_PER_TRACK];
+    private float[] mScratch = new float[MAX_POINTS_PER_TRACK];
+
+    /**
+     * @param minConf tracks below this (decayed) confidence have to be re-classified
+     */
+    public DigitTracker(double minConf) {
+        mMinConf = minConf;
+    }
+
+    /**
+     * Moves every track to the given frame. Tracks that are lost, drift or leave the
+     * image are marked lost and removed.
+     * @param gray single channel frame, same size as previous frames
+     */
+    public void update(Mat gray) {
+        int total = 0;
+        for (Track track : mTracks) {
+            total += track.pointCount;
+        }
+
+        if (total > 0 && !mPrevGray.empty()) {
+            if (mPtsBuffer.length < total * 2) {
+                mPtsBuffer = new float[total * 2];
+                mStatusBuffer = new byte[total];
+            }
+
+            int offset = 0;
+            for (Track track : mTracks) {
+                System.arraycopy(track.points, 0, mPtsBuffer, offset, track.pointCount * 2);
+                offset += track.pointCount * 2;
+            }
+
+            mPrevPts.create(total, 1, CvType.CV_32FC2);
+            mPrevPts.put(0, 0, mPtsBuffer);
+            mFlow.calc(mPrevGray, gray, mPrevPts, mNextPts, mStatus);
+            mNextPts.get(0, 0, mPtsBuffer);
+            mStatus.get(0, 0, mStatusBuffer);
+
+            offset = 0;
+            for (Track track : mTracks) {
+                int count = track.pointCount;
+                moveTrack(track, offset, gray.cols(), gray.rows());
+                offset += count;
+            }
+        }
+
+        Iterator<Track> it = mTracks.iterator();
+        while (it.hasNext()) {
+            Track track = it.next();
+            if (track.lost || track.getConfidence() < mMinConf) {
+                track.lost = true;
+                it.remove();
+            }
+        }
+
+        gray.copyTo(mPrevGray);
+    }
+
+    /**
+     * Moves track by the median displacement of its followed points.
+     * @param first index of the first point of the track in the flow buffers
+     */
+    private void moveTrack(Track track, int first, int width, int height) {
+        int kept = 0;
+        for (int i = 0; i < track.pointCount; ++i) {
+            int p = first + i;
+            if (mStatusBuffer[p] == 0) {
+                continue;
+            }
+            float x = mPtsBuffer[p * 2];
+            float y = mPtsBuffer[p * 2 + 1];
+            mDx[kept] = x - track.points[i * 2];
+            mDy[kept] = y - track.points[i * 2 + 1];
+            track.points[kept * 2] = x;
+            track.points[kept * 2 + 1] = y;
+            ++kept;
+        }
+        track.pointCount = kept;
+        ++track.age;
+
+        if (kept < MIN_POINTS_PER_TRACK) {
+            track.lost = true;
+            return;
+        }
+
+        float dx = median(mDx, kept);
+        float dy = median(mDy, kept);
+
+        // points of a rigid digit move together, a large spread means drift
+        for (int i = 0; i < kept; ++i) {
+            mScratch[i] = Math.abs(mDx[i] - dx) + Math.abs(mDy[i] - dy);
+        }
+        if (median(mScratch, kept) > MAX_DRIFT) {
+            track.lost = true;
+            return;
+        }
+
+        track.box.x = Math.round(track.box.x + dx);
+        track.box.y = Math.round(track.box.y + dy);
+
+        if (track.box.x < 0 || track.box.y < 0
+                || track.box.x + track.box.width > width || track.box.y + track.box.height > height) {
+            track.lost = true;
+        }
+    }
+
+    /**
+     * Sorts a copy of values into mScratch, values keep their order
+     */
+    private float median(float[] values, int length) {
+        System.arraycopy(values, 0, mScratch, 0, length);
+        Arrays.sort(mScratch, 0, length);
+        return mScratch[length / 2];
+    }
+
+    /**
+     * Starts tracking box of gray, which has just been classified.
+     * Must be called after update() for the same frame.
+     * @return the new track, or null if box has too few features to be tracked
+     */
+    public Track addTrack(Mat gray, Rect box, Classification[] results) {
+        Mat roi = gray.submat(box);
+        Imgproc.goodFeaturesToTrack(roi, mCorners, MAX_POINTS_PER_TRACK, FEATURE_QUALITY, FEATURE_MIN_DISTANCE);
+        roi.release();
+
+        int count = mCorners.rows();
+        if (count < MIN_POINTS_PER_TRACK) {
+            return null;
+        }
+
+        int[] corners = new int[count * 2];
+        mCorners.get(0, 0, corners);
+        float[] points = new float[count * 2];
+        for (int i = 0; i < count; ++i) {
+            points[i * 2] = corners[i * 2] + box.x;
+            points[i * 2 + 1] = corners[i * 2 + 1] + box.y;
+        }
+
+        Track track = new Track(box.clone(), results, points, count);
+        mTracks.add(track);
+        return track;
+    }
+
+    /**
+     * @return live tracks, lost ones are removed by update()
+     */
+    public List<Track> getTracks() {
+        return mTracks;
+    }
+
+    /**
+     * @return true if box overlaps any live track
+     */
+    public boolean isTracked(Rect box) {
+        return getTrack(box) != null;
+    }
+
+    /**
+     * @return the first live track overlapping box, null if there is none
+     */
+    public Track getTrack(Rect box) {
+        for (Track track : mTracks) {
+            Rect t = track.box;
+            if (box.x < t.x + t.width && t.x < box.x + box.width
+                    && box.y < t.y + t.height && t.y < box.y + box.height) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        mTracks.clear();
+    }
+
+    public void release() {
+        mTracks.clear();
+        mPrevGray.release();
+        mPrevPts.release();
+        mNextPts.release();
+        mStatus.release();
+        mCorners.release();
+    }
+}
@@ -0,0 +1,134 @@
+package com.krmylmz.characterrecognizer.debug;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves model inputs for debugging without slowing down recognition. capture() only
+ * samples and queues the pixels as bytes; a writer thread appends them to one file.
+ * When the queue is full the capture is dropped instead of waiting.
+ *
+ * File format, big-endian: magic "DCAP", int width, int height once, then per capture
+ * a long System.currentTimeMillis() and width * height bytes, 0 for background and
+ * 255 for ink. Appending to an existing file adds records only.
+ */
+public class DebugCapture implements Closeable {
+
+    public static final int MAGIC = 0x44434150; // "DCAP"
+
+    private final int width;
+    private final int height;
+    private final int sampleEvery;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread writer;
+
+    private long captureCount = 0;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * @param file container file, created or appended to
+     * @param width width of the captured inputs
+     * @param height height of the captured inputs
+     * @param sampleEvery every sampleEvery-th capture call is kept, 1 for all
+     * @param capacity captures waiting for the writer at most
+     */
+    public DebugCapture(File file, int width, int height, int sampleEvery, int capacity) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.sampleEvery = Math.max(sampleEvery, 1);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        boolean isNew = !file.exists() || file.length() == 0;
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (isNew) {
+            out.writeInt(MAGIC);
+            out.writeInt(width);
+            out.writeInt(height);
+        }
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(out);
+            }
+        }, "DebugCapture");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues pixels if this call is sampled. Called from one thread.
+     * @param pixels model input, 0 for background and 1 for ink
+     */
+    public void capture(float[] pixels) {
+        if (closed || captureCount++ % sampleEvery != 0) {
+            return;
+        }
+
+        byte[] record = new byte[width * height];
+        for (int i = 0; i < record.length; ++i) {
+            record[i] = (byte) Math.round(Math.max(0, Math.min(1, pixels[i])) * 255);
+        }
+
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return captures dropped because the writer was behind
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void write(DataOutputStream out) {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                byte[] record = queue.poll();
+                if (record == null) {
+                    // nothing waiting, make what is written visible
+                    out.flush();
+                    record = queue.take();
+                }
+                out.writeLong(System.currentTimeMillis());
+                out.write(record);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes what is queued and closes the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // wakes the writer if it waits on an empty queue
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
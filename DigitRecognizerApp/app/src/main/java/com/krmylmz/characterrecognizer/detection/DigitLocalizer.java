@@ -0,0 +1,202 @@
+package com.krmylmz.characterrecognizer.detection;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.dnn.Dnn;
+import org.opencv.features2d.MSER;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds digit candidates in a grayscale camera frame or photo with MSER, so only the
+ * candidate regions are classified instead of every window position of the image.
+ * Candidates are filtered by size and aspect ratio, overlapping ones are suppressed
+ * with Dnn.NMSBoxes, boxes mostly inside a larger one (the holes of 0, 6, 8 and 9) are
+ * dropped and the survivors are classified in one batch per classifier.
+ *
+ * Only OpenCV core classes and PixelPreprocessor are used, no Android ones, so the
+ * server module compiles this class too (VideoRecognizer).
+ */
+public class DigitLocalizer {
+
+    // MNIST dataset property
+    private static final int PIXEL_WIDTH = 28;
+    private static final int DRAWING_WIDTH = 20;
+
+    // width / height range of a digit box, "1" is narrow
+    private static final double MIN_ASPECT = 0.1;
+    private static final double MAX_ASPECT = 1.2;
+
+    // digit height relative to the image height
+    private static final double MIN_HEIGHT_RATIO = 0.03;
+    private static final double MAX_HEIGHT_RATIO = 0.9;
+
+    private static final float NMS_THRESHOLD = 0.3f;
+
+    // a box with this part of its area inside a larger kept box is not a digit of its own
+    private static final double CONTAINED_RATIO = 0.8;
+
+    // white border kept around a candidate so its bounds can be found
+    private static final int CROP_MARGIN = 2;
+
+    private final MSER mMser = MSER.create();
+
+    // Reused buffers
+    private final MatOfRect mBoxes = new MatOfRect();
+    private final Mat mBinary = new Mat();
+    private byte[] mBinaryPixels = new byte[0];
+    private final PixelPreprocessor mPreprocessor = new PixelPreprocessor(PIXEL_WIDTH);
+
+    /**
+     * @param gray single channel image, dark digits on light background
+     * @return candidate digit boxes, left to right
+     */
+    public List<Rect> locate(Mat gray) {
+        List<MatOfPoint> regions = new ArrayList<>();
+        mMser.detectRegions(gray, regions, mBoxes);
+        for (MatOfPoint region : regions) {
+            region.release();
+        }
+
+        int minHeight = (int) (gray.rows() * MIN_HEIGHT_RATIO);
+        int maxHeight = (int) (gray.rows() * MAX_HEIGHT_RATIO);
+
+        List<Rect> candidates = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        for (Rect box : mBoxes.toArray()) {
+            double aspect = box.width * 1.0 / box.height;
+            if (box.height < minHeight || box.height > maxHeight
+                    || aspect < MIN_ASPECT || aspect > MAX_ASPECT) {
+                continue;
+            }
+            candidates.add(box);
+            // MSER gives nested regions of one digit, prefer the outer one
+            scores.add((float) box.area());
+        }
+
+        List<Rect> digits = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return digits;
+        }
+
+        MatOfRect boxes = new MatOfRect();
+        boxes.fromList(candidates);
+        MatOfFloat boxScores = new MatOfFloat();
+        boxScores.fromList(scores);
+        MatOfInt indices = new MatOfInt();
+        Dnn.NMSBoxes(boxes, boxScores, 0, NMS_THRESHOLD, indices);
+
+        List<Rect> survivors = new ArrayList<>();
+        for (int index : indices.toArray()) {
+            survivors.add(candidates.get(index));
+        }
+        boxes.release();
+        boxScores.release();
+        indices.release();
+
+        // a hole box has a low IoU with its digit, so it survives NMS: keep the larger
+        // boxes first and drop the ones inside them
+        Collections.sort(survivors, new Comparator<Rect>() {
+            @Override
+            public int compare(Rect a, Rect b) {
+                return Double.compare(b.area(), a.area());
+            }
+        });
+        for (Rect box : survivors) {
+            if (!isContained(box, digits)) {
+                digits.add(box);
+            }
+        }
+
+        // reading order
+        Collections.sort(digits, new Comparator<Rect>() {
+            @Override
+            public int compare(Rect a, Rect b) {
+                return a.x - b.x;
+            }
+        });
+        return digits;
+    }
+
+    // true if most of box lies inside one of the kept boxes
+    private static boolean isContained(Rect box, List<Rect> kept) {
+        double area = box.area();
+        for (Rect other : kept) {
+            int width = Math.min(box.x + box.width, other.x + other.width) - Math.max(box.x, other.x);
+            int height = Math.min(box.y + box.height, other.y + other.height) - Math.max(box.y, other.y);
+            if (width > 0 && height > 0 && width * (double) height >= CONTAINED_RATIO * area) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Preprocesses every box like MainActivity.processBitmap and classifies all of them
+     * with a single recognizeBatch call per classifier.
+     * @param gray the image the boxes were located in
+     * @param boxes candidate boxes, usually from locate()
+     * @return results[classifier index][box index]
+     */
+    public Classification[][] classify(Mat gray, List<Rect> boxes, List<Classifier> classifiers) {
+        float[] batch = preprocess(gray, boxes);
+
+        Classification[][] results = new Classification[classifiers.size()][];
+        for (int c = 0; c < classifiers.size(); ++c) {
+            results[c] = boxes.isEmpty()
+                    ? new Classification[0]
+                    : classifiers.get(c).recognizeBatch(batch, boxes.size());
+        }
+        return results;
+    }
+
+    /**
+     * Preprocesses every box like MainActivity.processBitmap into one batch buffer,
+     * so preprocessing and classification can run on different threads.
+     * @param gray the image the boxes were located in
+     * @param boxes candidate boxes, usually from locate()
+     * @return model inputs of the boxes one after another
+     */
+    public float[] preprocess(Mat gray, List<Rect> boxes) {
+        int inputLength = PIXEL_WIDTH * PIXEL_WIDTH;
+        float[] batch = new float[boxes.size() * inputLength];
+
+        for (int i = 0; i < boxes.size(); ++i) {
+            Rect box = boxes.get(i);
+            int x1 = Math.max(box.x - CROP_MARGIN, 0);
+            int y1 = Math.max(box.y - CROP_MARGIN, 0);
+            int x2 = Math.min(box.x + box.width + CROP_MARGIN, gray.cols());
+            int y2 = Math.min(box.y + box.height + CROP_MARGIN, gray.rows());
+
+            Mat crop = gray.submat(y1, y2, x1, x2);
+            Imgproc.threshold(crop, mBinary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+            crop.release();
+
+            int width = mBinary.cols();
+            int height = mBinary.rows();
+            if (mBinaryPixels.length < width * height) {
+                mBinaryPixels = new byte[width * height];
+            }
+            mBinary.get(0, 0, mBinaryPixels);
+            mPreprocessor.toPixels(mBinaryPixels, width, height, 255, DRAWING_WIDTH, batch, i * inputLength);
+        }
+        return batch;
+    }
+
+    public void release() {
+        mBoxes.release();
+        mBinary.release();
+    }
+}
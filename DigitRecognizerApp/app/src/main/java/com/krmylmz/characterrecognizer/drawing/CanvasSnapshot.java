@@ -0,0 +1,121 @@
+package com.krmylmz.characterrecognizer.drawing;
+
+/**
+ * Gray pixels of the inked part of the DrawView canvas, black drawing on white
+ * background, filled by DrawView.snapshot. The buffers grow when needed and are
+ * reused between snapshots, so taking a snapshot does not allocate once warmed up.
+ */
+public class CanvasSnapshot {
+
+    // no generation of DrawView is negative
+    private long generation = -1;
+
+    private int left, top, width, height;
+    private int canvasWidth, canvasHeight;
+
+    private int[] argb = new int[0];
+    private byte[] gray = new byte[0];
+
+    /**
+     * @return DrawView generation the pixels belong to
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Makes the next DrawView.snapshot read the canvas even if it did not change.
+     */
+    public void invalidate() {
+        generation = -1;
+    }
+
+    /**
+     * @return true if there was no ink on the canvas
+     */
+    public boolean isEmpty() {
+        return width == 0 || height == 0;
+    }
+
+    /**
+     * @return x of the snapshot in canvas coordinates
+     */
+    public int getLeft() {
+        return left;
+    }
+
+    /**
+     * @return y of the snapshot in canvas coordinates
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * @return width of the whole canvas
+     */
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    /**
+     * @return height of the whole canvas
+     */
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return gray pixels, row by row, only the first width * height values are valid
+     */
+    public byte[] getGray() {
+        return gray;
+    }
+
+    /**
+     * Resizes the buffers for a width x height snapshot of generation.
+     * @return argb buffer for Bitmap.getPixels
+     */
+    int[] begin(long generation, int canvasWidth, int canvasHeight, int left, int top, int width, int height) {
+        this.generation = generation;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+
+        int length = width * height;
+        if (argb.length < length) {
+            argb = new int[length];
+            gray = new byte[length];
+        }
+        return argb;
+    }
+
+    /**
+     * Converts the argb pixels to gray.
+     * @param alphaOnly true for ALPHA_8 pixels, gray = 255 - alpha; otherwise the blue
+     *                  channel is taken, the drawing has no colors
+     */
+    void finish(boolean alphaOnly) {
+        int length = width * height;
+        if (alphaOnly) {
+            for (int i = 0; i < length; ++i) {
+                gray[i] = (byte) (0xff - (argb[i] >>> 24));
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                gray[i] = (byte) argb[i];
+            }
+        }
+    }
+}
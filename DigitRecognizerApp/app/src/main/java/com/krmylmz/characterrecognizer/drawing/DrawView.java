@@ -8,13 +8,13 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.ArrayList;
-
 import static com.krmylmz.characterrecognizer.drawing.DrawPath.getStrokeWidth;
 
 public class DrawView extends View {
@@ -23,9 +23,13 @@ public class DrawView extends View {
     public static final int DEFAULT_COLOR = Color.BLACK;
     private static final float TOUCH_LIMIT = 4;
     private float mX, mY;
-    private Path mPath;
+    // the stroke being drawn, finished strokes only live in mStrokes and mBitmap
+    private final Path mPath = new Path();
+    private boolean mDrawing = false;
     private Paint mPaint;
-    private ArrayList<DrawPath> paths = new ArrayList<>();
+    private final StrokeStore mStrokes = new StrokeStore();
+    // event time of the first point in mStrokes
+    private long mStartTime;
     private int currentColor;
     private int backgroundColor = DEFAULT_BG_COLOR;
     private int strokeWidth;
@@ -33,6 +37,24 @@ public class DrawView extends View {
     private Canvas mCanvas;
     private Paint mBitmapPaint = new Paint(Paint.DITHER_FLAG);
 
+    // ALPHA_8 backing store: mBitmap only keeps the ink coverage as alpha, it is
+    // drawn tinted with currentColor over backgroundColor
+    private boolean mAlphaOnly = false;
+    private final Paint mBackgroundPaint = new Paint();
+
+    // end point of the last segment added to mPath
+    private float mEndX, mEndY;
+    // area changed by the current touch event, only that part is invalidated
+    private final Rect mDirtyRect = new Rect();
+    // part of mBitmap onDraw copies, see onDraw
+    private final Rect mClipRect = new Rect();
+
+    // incremented whenever mBitmap changes, see snapshot
+    private long mGeneration = 0;
+
+    // receives the strokes too, may be null
+    private StrokeRenderWorker mRenderWorker;
+
     public DrawView(Context context, AttributeSet attrs) {
         super(context, attrs);
         mPaint = new Paint();
@@ -51,15 +73,38 @@ public class DrawView extends View {
     }
 
     public void init(DisplayMetrics metrics) {
+        init(metrics, false);
+    }
+
+    /**
+     * @param alphaOnly if true the canvas is a single channel ALPHA_8 bitmap, a quarter of
+     *                  the ARGB_8888 memory. The drawing is black on white either way, so
+     *                  the ink alpha is all that is needed (see Preprocessor).
+     */
+    public void init(DisplayMetrics metrics, boolean alphaOnly) {
 //        int height = metrics.heightPixels;
         int width = metrics.widthPixels;
 
-        mBitmap = Bitmap.createBitmap(width, width, Bitmap.Config.ARGB_8888);
+        mAlphaOnly = alphaOnly;
+        mBitmap = Bitmap.createBitmap(width, width,
+                alphaOnly ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888);
 
         mCanvas = new Canvas(mBitmap);
+        fillBackground();
 
         currentColor = DEFAULT_COLOR;
         strokeWidth = BRUSH_SIZE;
+
+        // an ALPHA_8 bitmap is drawn with the paint color
+        mBitmapPaint.setColor(currentColor);
+        mBackgroundPaint.setColor(backgroundColor);
+    }
+
+    /**
+     * @return true if the canvas bitmap is ALPHA_8, ink alpha on transparent background
+     */
+    public boolean isAlphaOnly() {
+        return mAlphaOnly;
     }
 
     public void setBitmap(Bitmap bitmap){
@@ -71,57 +116,202 @@ public class DrawView extends View {
         return mBitmap.copy(mBitmap.getConfig(), true);
     }
 
+    /**
+     * @return changes with every stroke drawn into the canvas and every clear
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reads the inked part of the canvas into out, instead of copying the whole bitmap
+     * like getBitmap. Nothing is read if out already holds the current generation.
+     * Must be called on the UI thread, where the canvas is drawn.
+     * @param out snapshot to fill, its buffers are reused
+     * @return false if out was already up to date
+     */
+    public boolean snapshot(CanvasSnapshot out) {
+        if (out.getGeneration() == mGeneration) {
+            return false;
+        }
+
+        if (mStrokes.isEmpty()) {
+            out.begin(mGeneration, mBitmap.getWidth(), mBitmap.getHeight(), 0, 0, 0, 0);
+            return true;
+        }
+
+        // ink bounds of the strokes, with the stroke width and antialiasing
+        int pad = getStrokeWidth() / 2 + 2;
+        int left = Math.max((int) mStrokes.getMinX() - pad, 0);
+        int top = Math.max((int) mStrokes.getMinY() - pad, 0);
+        int right = Math.min((int) mStrokes.getMaxX() + pad + 1, mBitmap.getWidth());
+        int bottom = Math.min((int) mStrokes.getMaxY() + pad + 1, mBitmap.getHeight());
+        int width = Math.max(right - left, 0);
+        int height = Math.max(bottom - top, 0);
+
+        int[] argb = out.begin(mGeneration, mBitmap.getWidth(), mBitmap.getHeight(),
+                left, top, width, height);
+        if (width > 0 && height > 0) {
+            mBitmap.getPixels(argb, 0, width, left, top, width, height);
+            out.finish(mAlphaOnly);
+        }
+        return true;
+    }
+
+    /**
+     * Posts every stroke point and clear to worker as well, so it keeps the
+     * recognition input up to date off the UI thread.
+     * @param worker null to stop posting
+     */
+    public void setRenderWorker(StrokeRenderWorker worker) {
+        mRenderWorker = worker;
+    }
+
+    /**
+     * @return points of every stroke drawn since the last clear
+     */
+    public StrokeStore getStrokes() {
+        return mStrokes;
+    }
+
     public void clear() {
         backgroundColor = DEFAULT_BG_COLOR;
-        paths.clear();
+        mStrokes.clear();
+        if (mRenderWorker != null) {
+            mRenderWorker.clear();
+        }
+        mDrawing = false;
+        fillBackground();
+        ++mGeneration;
         invalidate();
     }
 
+    private void fillBackground() {
+        if (mAlphaOnly) {
+            // no ink, the background is drawn in onDraw
+            mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        } else {
+            mCanvas.drawColor(backgroundColor);
+        }
+    }
+
 
 
+    /**
+     * Finished strokes are already in mBitmap (see commitPath), so only the
+     * stroke being drawn is drawn on top of it.
+     *
+     * Only the part of mBitmap inside the clip bounds is drawn. In software rendering the
+     * clip is the rect given to invalidate(Rect), so a touch event only copies the area of
+     * its new segments. Hardware accelerated views (the default) ignore that rect from
+     * API 21 and invalidate(Rect) is deprecated in API 28: there the clip is the whole
+     * view and the whole bitmap is drawn every frame.
+     */
     @Override
     protected void onDraw(Canvas canvas) {
         canvas.save();
-        mCanvas.drawColor(backgroundColor);
-
-        for (DrawPath dPath : paths) {
-            mPaint.setColor(dPath.getColor());
-            mPaint.setStrokeWidth(getStrokeWidth());
-            mPaint.setMaskFilter(null);
-
-            mCanvas.drawPath(dPath.getPath(), mPaint);
+        if (canvas.getClipBounds(mClipRect)
+                && mClipRect.intersect(0, 0, mBitmap.getWidth(), mBitmap.getHeight())) {
+            if (mAlphaOnly) {
+                canvas.drawRect(mClipRect, mBackgroundPaint);
+            }
+            canvas.drawBitmap(mBitmap, mClipRect, mClipRect, mBitmapPaint);
         }
 
+        if (mDrawing) {
+            // strokes out of the bitmap are not part of the drawing
+            canvas.clipRect(0, 0, mBitmap.getWidth(), mBitmap.getHeight());
+            setupPaint(currentColor);
+            canvas.drawPath(mPath, mPaint);
+        }
 
-        canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
         canvas.restore();
     }
 
+    private void setupPaint(int color) {
+        mPaint.setColor(color);
+        mPaint.setStrokeWidth(getStrokeWidth());
+        mPaint.setMaskFilter(null);
+    }
+
+    /**
+     * Draws the finished stroke into mBitmap once, it is never replayed.
+     */
+    private void commitPath() {
+        setupPaint(currentColor);
+        mCanvas.drawPath(mPath, mPaint);
+        mDrawing = false;
+        ++mGeneration;
+    }
+
 
-    private void touchStart(float x, float y) {
-        mPath = new Path();
-        DrawPath dPath = new DrawPath(currentColor, mPath);
-        paths.add(dPath);
+    private void touchStart(float x, float y, long time) {
+        if (mStrokes.isEmpty()) {
+            mStartTime = time;
+        }
+        mStrokes.beginStroke(x, y, time - mStartTime);
+        if (mRenderWorker != null) {
+            mRenderWorker.beginStroke(x, y, time - mStartTime);
+        }
+        mDrawing = true;
 
         mPath.reset();
         mPath.moveTo(x, y);
         mX = x;
         mY = y;
+        mEndX = x;
+        mEndY = y;
+        addDirty(x, y);
     }
 
-    private void touchMove(float x, float y) {
+    private void touchMove(float x, float y, long time) {
+        // stroke was cleared while drawing
+        if (!mDrawing) {
+            return;
+        }
+
         float dx = Math.abs(x - mX);
         float dy = Math.abs(y - mY);
 
         if (dx >= TOUCH_LIMIT || dy >= TOUCH_LIMIT) {
-            mPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            float endX = (x + mX) / 2;
+            float endY = (y + mY) / 2;
+            mPath.quadTo(mX, mY, endX, endY);
+            mStrokes.addPoint(x, y, time - mStartTime);
+            if (mRenderWorker != null) {
+                mRenderWorker.addPoint(x, y, time - mStartTime);
+            }
+
+            // the curve stays in the box of its end and control points
+            addDirty(mEndX, mEndY);
+            addDirty(mX, mY);
+            addDirty(endX, endY);
+
+            mEndX = endX;
+            mEndY = endY;
             mX = x;
             mY = y;
         }
     }
 
     private void touchUp() {
+        if (!mDrawing) {
+            return;
+        }
+
         mPath.lineTo(mX, mY);
+        addDirty(mEndX, mEndY);
+        addDirty(mX, mY);
+        commitPath();
+    }
+
+    /**
+     * Adds the stroke width wide square around (x, y) to mDirtyRect.
+     */
+    private void addDirty(float x, float y) {
+        // half the stroke plus antialiasing
+        int pad = getStrokeWidth() / 2 + 2;
+        mDirtyRect.union((int) x - pad, (int) y - pad, (int) x + pad + 1, (int) y + pad + 1);
     }
 
     @Override
@@ -129,23 +319,37 @@ public class DrawView extends View {
         float x = event.getX();
         float y = event.getY();
 
-        switch (event.getAction()) {
+        mDirtyRect.setEmpty();
+
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                touchStart(x, y);
-                invalidate();
+                touchStart(x, y, event.getEventTime());
                 break;
 
             case MotionEvent.ACTION_MOVE:
-                touchMove(x, y);
-                invalidate();
+                // samples batched since the last event come first, oldest to newest
+                int historySize = event.getHistorySize();
+                for (int h = 0; h < historySize; ++h) {
+                    touchMove(event.getHistoricalX(h), event.getHistoricalY(h),
+                            event.getHistoricalEventTime(h));
+                }
+                touchMove(x, y, event.getEventTime());
                 break;
 
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                // a cancelled gesture (e.g. intercepted by a parent) is committed like a
+                // finished one, it is already in mStrokes and mRenderWorker
                 touchUp();
-                invalidate();
                 break;
         }
 
+        // redraw only the area of the new segments, once per event;
+        // hardware accelerated views redraw everything anyway, see onDraw
+        if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect);
+        }
+
         return true;
     }
 }
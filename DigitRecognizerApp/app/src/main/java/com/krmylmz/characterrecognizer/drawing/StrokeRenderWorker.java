@@ -0,0 +1,198 @@
+package com.krmylmz.characterrecognizer.drawing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the 28x28 recognition input of the drawing up to date on its own thread.
+ * DrawView posts stroke deltas (begin, point, clear) to a single producer ring buffer of
+ * primitive arrays, so a touch sample allocates nothing. The worker replays them into its
+ * own StrokeStore, draws only the new segments with StrokeRasterizer.rasterizeAppended and
+ * publishes the result by swapping two reused pixel buffers. Detect only copies the latest
+ * input, so neither the rasterisation nor any other preprocessing runs on the UI thread.
+ *
+ * Deltas are posted from one thread (the UI thread) only.
+ */
+public class StrokeRenderWorker {
+
+    private static final int BEGIN = 0;
+    private static final int POINT = 1;
+    private static final int CLEAR = 2;
+
+    // deltas the worker may lag behind, a power of two
+    private static final int CAPACITY = 1024;
+
+    // worker parks at most this long between queue checks
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int INPUT_LENGTH = StrokeRasterizer.PIXEL_WIDTH * StrokeRasterizer.PIXEL_WIDTH;
+
+    // delta ring buffer, slot i of mOps, mXs, mYs and mTs is one delta
+    private final int[] mOps = new int[CAPACITY];
+    private final float[] mXs = new float[CAPACITY];
+    private final float[] mYs = new float[CAPACITY];
+    private final float[] mTs = new float[CAPACITY];
+    // deltas posted so far, written by the posting thread only; lazySet publishes the slot
+    private final AtomicLong mTail = new AtomicLong();
+    // deltas applied so far, written by the worker only
+    private final AtomicLong mHead = new AtomicLong();
+
+    // published input and the number of deltas it includes, guarded by mLock
+    private final Object mLock = new Object();
+    private float[] mFront = new float[INPUT_LENGTH];
+    private long mFrontGeneration = 0;
+    // mFrontGeneration, readable without the lock
+    private volatile long mPublished = 0;
+
+    private final float mStrokeWidth;
+
+    // worker thread only
+    private final StrokeStore mStrokes = new StrokeStore();
+    private final StrokeRasterizer mRasterizer;
+    private float[] mBack = new float[INPUT_LENGTH];
+
+    private volatile Thread mThread;
+    private volatile boolean mStop;
+
+    /**
+     * @param strokeWidth stroke width in view coordinates
+     * @param canvasWidth width of the DrawView bitmap, which is canvasWidth x canvasWidth;
+     *                    ink outside it is clipped like on the canvas
+     */
+    public StrokeRenderWorker(float strokeWidth, int canvasWidth) {
+        mStrokeWidth = strokeWidth;
+        mRasterizer = new StrokeRasterizer(canvasWidth, canvasWidth);
+    }
+
+    public void start() {
+        mStop = false;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "StrokeRenderWorker");
+        mThread.start();
+    }
+
+    public void stop() {
+        Thread thread = mThread;
+        if (thread == null) {
+            return;
+        }
+        mStop = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+    }
+
+    public void beginStroke(float x, float y, float t) {
+        post(BEGIN, x, y, t);
+    }
+
+    public void addPoint(float x, float y, float t) {
+        post(POINT, x, y, t);
+    }
+
+    public void clear() {
+        post(CLEAR, 0, 0, 0);
+    }
+
+    private void post(int op, float x, float y, float t) {
+        long tail = mTail.get();
+        // full only if the worker is CAPACITY deltas behind, wait for it to drain
+        while (tail - mHead.get() == CAPACITY) {
+            Thread thread = mThread;
+            if (thread == null) {
+                // stopped, nothing will drain it
+                return;
+            }
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+
+        int slot = (int) tail & (CAPACITY - 1);
+        mOps[slot] = op;
+        mXs[slot] = x;
+        mYs[slot] = y;
+        mTs[slot] = t;
+        mTail.lazySet(tail + 1);
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * Copies the latest published input, it may lag behind the last posted delta.
+     * @param pixelsOut 28x28 pixels, 0 for background and 1 for ink
+     * @return number of deltas the input includes
+     */
+    public long copyLatest(float[] pixelsOut) {
+        synchronized (mLock) {
+            System.arraycopy(mFront, 0, pixelsOut, 0, INPUT_LENGTH);
+            return mFrontGeneration;
+        }
+    }
+
+    /**
+     * Waits until every delta posted so far is rasterised and copies the input. The worker
+     * keeps up with touch events, so this normally returns at once.
+     * @param timeoutMs maximum wait
+     * @param pixelsOut 28x28 pixels, 0 for background and 1 for ink
+     * @return false if timeoutMs passed first, pixelsOut then holds an older drawing
+     */
+    public boolean awaitLatest(long timeoutMs, float[] pixelsOut) {
+        long posted = mTail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        while (mPublished < posted && System.nanoTime() < deadline) {
+            LockSupport.unpark(mThread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        return copyLatest(pixelsOut) >= posted;
+    }
+
+    private void work() {
+        while (!mStop) {
+            long head = mHead.get();
+            long tail = mTail.get();
+            if (head == tail) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+                continue;
+            }
+
+            // apply everything queued, then rasterise once
+            for (; head < tail; ++head) {
+                apply((int) head & (CAPACITY - 1));
+            }
+            mHead.lazySet(head);
+
+            mRasterizer.rasterizeAppended(mStrokes, mStrokeWidth, mBack, 0);
+            synchronized (mLock) {
+                float[] published = mBack;
+                mBack = mFront;
+                mFront = published;
+                mFrontGeneration = head;
+            }
+            mPublished = head;
+        }
+    }
+
+    private void apply(int slot) {
+        switch (mOps[slot]) {
+            case BEGIN:
+                mStrokes.beginStroke(mXs[slot], mYs[slot], mTs[slot]);
+                break;
+            case POINT:
+                mStrokes.addPoint(mXs[slot], mYs[slot], mTs[slot]);
+                break;
+            case CLEAR:
+                mStrokes.clear();
+                mRasterizer.reset();
+                break;
+        }
+    }
+}
@@ -1,31 +0,0 @@
-package com.krmylmz.characterrecognizer.models;
-
-/**
- * Created by marianne-linhares on 20/04/17.
- */
-
-public class Classification {
-
-    //conf is the output
-    private float conf;
-    //input label
-    private String label;
-
-    Classification() {
-        this.conf = -1.0F;
-        this.label = null;
-    }
-
-    void update(float conf, String label) {
-        this.conf = conf;
-        this.label = label;
-    }
-
-    public String getLabel() {
-        return label;
-    }
-
-    public float getConf() {
-        return conf;
-    }
-}
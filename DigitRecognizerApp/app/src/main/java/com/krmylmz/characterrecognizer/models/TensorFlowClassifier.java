@@ -3,7 +3,6 @@ package com.krmylmz.characterrecognizer.models;
 
 //Provides access to an application's raw asset files;
 import android.content.res.AssetManager;
-import android.util.Log;
 //Reads text from a character-input stream, buffering characters so as to provide for the efficient reading of characters, arrays, and lines.
 import java.io.BufferedReader;
 //for erros
@@ -39,7 +38,9 @@ public class TensorFlowClassifier implements Classifier {
     private boolean feedKeepProb;
 
     private List<String> labels;
+    private int numClasses;
     private float[] output;
+    private float[] batchOutput;
     private String[] outputNames;
 
         //given a saved drawn model, lets read all the classification labels that are
@@ -78,6 +79,7 @@ public class TensorFlowClassifier implements Classifier {
         //set its model path and where the raw asset files are
         c.tfHelper = new TensorFlowInferenceInterface(assetManager, modelPath);
         int numClasses = 10;
+        c.numClasses = numClasses;
 
         //how big is the input?
         c.inputSize = inputSize;
@@ -87,6 +89,7 @@ public class TensorFlowClassifier implements Classifier {
 
         c.outputName = outputName;
         c.output = new float[numClasses];
+        c.batchOutput = c.output;
 
         c.feedKeepProb = feedKeepProb;
 
@@ -136,21 +139,36 @@ public class TensorFlowClassifier implements Classifier {
         //for each output prediction
         //if its above the threshold for accuracy we predefined
         //write it out to the view
-        String labelArray[] = new String[10];
-        for(int i = 0; i < 10; i ++ ){
-            labelArray[i] = "" + i;
+        return Classification.select(output, 0, output.length, THRESHOLD);
+    }
+
+    @Override
+    public float[] getLastScores() {
+        return output;
+    }
+
+    @Override
+    public Classification[] recognizeBatch(final float[] pixels, int batchSize) {
+
+        //one feed and one run for the whole batch
+        tfHelper.feed(inputName, pixels, batchSize, inputSize, inputSize, 1);
+
+        if (feedKeepProb) {
+            tfHelper.feed("keep_prob", new float[] { 1 });
         }
-        Classification ans = new Classification();
-        Log.i("INFO_cnf", "START");
-        for (int i = 0; i < output.length; ++i) {
-            System.out.println(output[i]);
-            System.out.println(labels.get(i));
-            if (output[i] > THRESHOLD && output[i] > ans.getConf()) {
-                ans.update(output[i], "" + i);
-            }
+        tfHelper.run(outputNames);
+
+        //grow the output buffer only when a bigger batch comes
+        if (batchOutput.length < batchSize * numClasses) {
+            batchOutput = new float[batchSize * numClasses];
+        }
+        tfHelper.fetch(outputName, batchOutput);
+
+        Classification[] answers = new Classification[batchSize];
+        for (int b = 0; b < batchSize; ++b) {
+            answers[b] = Classification.select(batchOutput, b * numClasses, numClasses, THRESHOLD);
         }
-        Log.i("INFO_cnf", "END");
 
-        return ans;
+        return answers;
     }
 }
@@ -0,0 +1,65 @@
+package com.krmylmz.characterrecognizer.benchmarks;
+
+import com.krmylmz.characterrecognizer.fixtures.Fixtures;
+import com.krmylmz.characterrecognizer.models.ConvNet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pure Java inference with the layer shapes of the app's MNIST model: one 28x28
+ * classification, and the fully convolutional pass of ConvNetDetector over a
+ * 10x10 digit sheet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConvNetBenchmark {
+
+    private static final int FIXTURES = 64;
+    private static final int SHEET_DIGITS = 10;
+
+    private ConvNet net;
+    private float[][] inputs;
+    private float[] sheet;
+    private int sheetWidth;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        net = Fixtures.mnistConvNet();
+        inputs = Fixtures.modelInputs(FIXTURES);
+
+        // digits side by side, SHEET_DIGITS x SHEET_DIGITS
+        int size = Fixtures.PIXEL_WIDTH;
+        sheetWidth = size * SHEET_DIGITS;
+        sheet = new float[sheetWidth * sheetWidth];
+        for (int d = 0; d < SHEET_DIGITS * SHEET_DIGITS; ++d) {
+            float[] digit = inputs[d % FIXTURES];
+            int top = (d / SHEET_DIGITS) * size;
+            int left = (d % SHEET_DIGITS) * size;
+            for (int y = 0; y < size; ++y) {
+                System.arraycopy(digit, y * size, sheet, (top + y) * sheetWidth + left, size);
+            }
+        }
+    }
+
+    @Benchmark
+    public float[] classify() {
+        next = (next + 1) % FIXTURES;
+        return net.run(inputs[next], Fixtures.PIXEL_WIDTH, Fixtures.PIXEL_WIDTH);
+    }
+
+    @Benchmark
+    public float[] scoreMap() {
+        return net.run(sheet, sheetWidth, sheetWidth);
+    }
+}
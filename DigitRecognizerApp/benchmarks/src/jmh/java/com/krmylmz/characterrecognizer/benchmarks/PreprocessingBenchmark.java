@@ -0,0 +1,118 @@
+package com.krmylmz.characterrecognizer.benchmarks;
+
+import com.krmylmz.characterrecognizer.drawing.StrokeRasterizer;
+import com.krmylmz.characterrecognizer.drawing.StrokeStore;
+import com.krmylmz.characterrecognizer.fixtures.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canvas to model input steps on a 1080x1080 canvas, one fixture per invocation in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreprocessingBenchmark {
+
+    private static final int FIXTURES = 16;
+    private static final int WIDTH = Fixtures.CANVAS_WIDTH;
+    private static final int WHITE = 0xffffffff;
+
+    private int[][] argbCanvases;
+    private byte[][] grayCanvases;
+    private int[][] grayBounds;
+    private StrokeStore[] strokeSets;
+    private int next = 0;
+
+    private final int[] bounds = new int[4];
+    private final byte[] padded = new byte[Fixtures.PIXEL_WIDTH * Fixtures.PIXEL_WIDTH];
+    private final int[] paddedArgb = new int[Fixtures.PIXEL_WIDTH * Fixtures.PIXEL_WIDTH];
+    private final float[] pixels = new float[Fixtures.PIXEL_WIDTH * Fixtures.PIXEL_WIDTH];
+    private final StrokeRasterizer rasterizer = new StrokeRasterizer(Fixtures.CANVAS_WIDTH, Fixtures.CANVAS_WIDTH);
+
+    @Setup
+    public void setup() {
+        argbCanvases = Fixtures.argbCanvases(FIXTURES);
+        grayCanvases = Fixtures.grayCanvases(FIXTURES);
+        strokeSets = Fixtures.strokeSets(FIXTURES);
+
+        grayBounds = new int[FIXTURES][4];
+        for (int i = 0; i < FIXTURES; ++i) {
+            PrimitivePreprocessing.boundsGray(grayCanvases[i], WIDTH, WIDTH, 0xff, grayBounds[i]);
+        }
+
+        PrimitivePreprocessing.cropScalePad(grayCanvases[0], WIDTH, WIDTH, grayBounds[0],
+                Fixtures.DRAWING_WIDTH, Fixtures.PIXEL_WIDTH, padded);
+        for (int i = 0; i < padded.length; ++i) {
+            int v = padded[i] & 0xff;
+            paddedArgb[i] = 0xff000000 | (v << 16) | (v << 8) | v;
+        }
+    }
+
+    private int nextFixture() {
+        next = (next + 1) % FIXTURES;
+        return next;
+    }
+
+    @Benchmark
+    public int[] boundsArgbPerPixel() {
+        PrimitivePreprocessing.boundsArgbPerPixel(argbCanvases[nextFixture()], WIDTH, WIDTH, WHITE, bounds);
+        return bounds;
+    }
+
+    @Benchmark
+    public int[] boundsGray() {
+        PrimitivePreprocessing.boundsGray(grayCanvases[nextFixture()], WIDTH, WIDTH, 0xff, bounds);
+        return bounds;
+    }
+
+    @Benchmark
+    public byte[] cropScalePad() {
+        int i = nextFixture();
+        PrimitivePreprocessing.cropScalePad(grayCanvases[i], WIDTH, WIDTH, grayBounds[i],
+                Fixtures.DRAWING_WIDTH, Fixtures.PIXEL_WIDTH, padded);
+        return padded;
+    }
+
+    @Benchmark
+    public float[] normalizeArgb() {
+        PrimitivePreprocessing.normalizeArgb(paddedArgb, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public float[] normalizeGray() {
+        PrimitivePreprocessing.normalizeGray(padded, pixels);
+        return pixels;
+    }
+
+    /**
+     * Whole gray canvas path: bounds, crop/scale/pad and normalisation.
+     */
+    @Benchmark
+    public float[] grayPipeline() {
+        int i = nextFixture();
+        PrimitivePreprocessing.boundsGray(grayCanvases[i], WIDTH, WIDTH, 0xff, bounds);
+        PrimitivePreprocessing.cropScalePad(grayCanvases[i], WIDTH, WIDTH, bounds,
+                Fixtures.DRAWING_WIDTH, Fixtures.PIXEL_WIDTH, padded);
+        PrimitivePreprocessing.normalizeGray(padded, pixels);
+        return pixels;
+    }
+
+    /**
+     * The stroke path that replaces the canvas pipeline, see StrokeRasterizer.
+     */
+    @Benchmark
+    public float[] strokeRasterizer() {
+        rasterizer.rasterize(strokeSets[nextFixture()], Fixtures.STROKE_WIDTH, pixels, 0);
+        return pixels;
+    }
+}
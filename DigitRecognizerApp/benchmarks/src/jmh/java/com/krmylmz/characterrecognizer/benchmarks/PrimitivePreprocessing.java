@@ -0,0 +1,164 @@
+package com.krmylmz.characterrecognizer.benchmarks;
+
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The preprocessing steps of the app ported from OpenCV Mats and Bitmaps to primitive
+ * arrays, so they can be measured on a plain JVM. Each method names the app code it
+ * follows; results match it up to the rounding of OpenCV's fixed point resize.
+ */
+public final class PrimitivePreprocessing {
+
+    private PrimitivePreprocessing() {
+    }
+
+    /**
+     * Preprocessor.getMatBoundaries*(double[]): sums every channel of every pixel of a
+     * row (column) and compares the sums with the background, one pixel at a time.
+     * @param boundsOut {top, bottom, left, right}
+     */
+    public static void boundsArgbPerPixel(int[] argb, int width, int height, int background, int[] boundsOut) {
+        int bgR = (background >> 16) & 0xff;
+        int bgG = (background >> 8) & 0xff;
+        int bgB = background & 0xff;
+
+        boundsOut[0] = 0;
+        boundsOut[1] = height - 1;
+        boundsOut[2] = 0;
+        boundsOut[3] = width - 1;
+
+        for (int row = 0; row < height; ++row) {
+            if (!argbLineIsBackground(argb, row * width, 1, width, bgR, bgG, bgB)) {
+                boundsOut[0] = row;
+                break;
+            }
+        }
+        for (int row = height - 1; row >= 0; --row) {
+            if (!argbLineIsBackground(argb, row * width, 1, width, bgR, bgG, bgB)) {
+                boundsOut[1] = row;
+                break;
+            }
+        }
+        for (int col = 0; col < width; ++col) {
+            if (!argbLineIsBackground(argb, col, width, height, bgR, bgG, bgB)) {
+                boundsOut[2] = col;
+                break;
+            }
+        }
+        for (int col = width - 1; col >= 0; --col) {
+            if (!argbLineIsBackground(argb, col, width, height, bgR, bgG, bgB)) {
+                boundsOut[3] = col;
+                break;
+            }
+        }
+    }
+
+    private static boolean argbLineIsBackground(int[] argb, int start, int step, int length,
+                                                int bgR, int bgG, int bgB) {
+        double sumR = 0, sumG = 0, sumB = 0;
+        for (int i = 0, p = start; i < length; ++i, p += step) {
+            sumR += (argb[p] >> 16) & 0xff;
+            sumG += (argb[p] >> 8) & 0xff;
+            sumB += argb[p] & 0xff;
+        }
+        return sumR == length * (double) bgR && sumG == length * (double) bgG && sumB == length * (double) bgB;
+    }
+
+    /**
+     * Preprocessor.getMatBoundaries*(int): single channel, rows are scanned in memory
+     * order and the row scan stops at the first ink pixel. Same as PixelPreprocessor.
+     * @param boundsOut {top, bottom, left, right}
+     */
+    public static void boundsGray(byte[] gray, int width, int height, int background, int[] boundsOut) {
+        PixelPreprocessor.bounds(gray, width, height, background, boundsOut);
+    }
+
+    /**
+     * Preprocessor.toPixels after the bounds: crop with scale()'s margins, bilinear resize
+     * so the longer side is pixel, then pad with white to size x size like padBackground.
+     * @param bounds {top, bottom, left, right}
+     * @param out size * size gray pixels
+     */
+    public static void cropScalePad(byte[] gray, int width, int height, int[] bounds,
+                                    int pixel, int size, byte[] out) {
+        PixelPreprocessor.cropScalePad(gray, width, height, bounds, 0xff, pixel, size, out);
+    }
+
+    /**
+     * processBitmap before Preprocessor.getPixels: blue channel of ARGB pixels,
+     * (0xff - b) / 255.0 computed in double.
+     */
+    public static void normalizeArgb(int[] argb, float[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            int b = argb[i] & 0xff;
+            out[i] = (float) ((0xff - b) / 255.0);
+        }
+    }
+
+    /**
+     * Preprocessor.getPixels: gray bytes, float math.
+     */
+    public static void normalizeGray(byte[] gray, float[] out) {
+        PixelPreprocessor.normalize(gray, out.length, out, 0);
+    }
+
+    /**
+     * TensorFlowClassifier.recognize result selection: builds the label strings of every
+     * call and a label string per improvement, first class above threshold wins ties.
+     * @param blackhole consumes the label strings, so they are not optimised away
+     * @return label, null if no class is above threshold
+     */
+    public static String selectLikeRecognize(float[] scores, float threshold, Blackhole blackhole) {
+        String[] labelArray = new String[10];
+        for (int i = 0; i < 10; i++) {
+            labelArray[i] = "" + i;
+        }
+        blackhole.consume(labelArray);
+        float conf = -1.0f;
+        String label = null;
+        for (int i = 0; i < scores.length; ++i) {
+            if (scores[i] > threshold && scores[i] > conf) {
+                conf = scores[i];
+                label = "" + i;
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Same selection as selectLikeRecognize without allocations.
+     * @return class index, -1 if no class is above threshold
+     */
+    public static int argmax(float[] scores, float threshold) {
+        int best = -1;
+        float conf = -1.0f;
+        for (int i = 0; i < scores.length; ++i) {
+            if (scores[i] > threshold && scores[i] > conf) {
+                conf = scores[i];
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The k most probable classes, most probable first, by insertion into a k long list.
+     * @param indicesOut at least k long
+     */
+    public static void topK(float[] scores, int k, int[] indicesOut) {
+        int filled = 0;
+        for (int i = 0; i < scores.length; ++i) {
+            if (filled == k && scores[i] <= scores[indicesOut[k - 1]]) {
+                continue;
+            }
+            int pos = (filled < k) ? filled++ : k - 1;
+            while (pos > 0 && scores[indicesOut[pos - 1]] < scores[i]) {
+                indicesOut[pos] = indicesOut[pos - 1];
+                --pos;
+            }
+            indicesOut[pos] = i;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.krmylmz.characterrecognizer.benchmarks;
+
+import com.krmylmz.characterrecognizer.fixtures.Fixtures;
+import com.krmylmz.characterrecognizer.models.Classification;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result selection from a softmax output: the old TensorFlowClassifier selection, the
+ * Classification.select all classifiers use now, and allocation free variants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelectionBenchmark {
+
+    private static final int FIXTURES = 256;
+    private static final float THRESHOLD = 0.1f;
+
+    private float[][] scores;
+    private final int[] top = new int[3];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        scores = Fixtures.scores(FIXTURES, 10);
+    }
+
+    private float[] nextScores() {
+        next = (next + 1) % FIXTURES;
+        return scores[next];
+    }
+
+    @Benchmark
+    public String selectLikeRecognize(Blackhole blackhole) {
+        return PrimitivePreprocessing.selectLikeRecognize(nextScores(), THRESHOLD, blackhole);
+    }
+
+    @Benchmark
+    public Classification select() {
+        return Classification.select(nextScores(), 0, 10, THRESHOLD);
+    }
+
+    @Benchmark
+    public int argmax() {
+        return PrimitivePreprocessing.argmax(nextScores(), THRESHOLD);
+    }
+
+    @Benchmark
+    public int[] top3() {
+        PrimitivePreprocessing.topK(nextScores(), 3, top);
+        return top;
+    }
+}
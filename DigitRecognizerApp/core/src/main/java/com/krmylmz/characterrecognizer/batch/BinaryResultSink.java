@@ -0,0 +1,41 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one record per image with DataOutputStream:
+ * UTF name, byte label (-1 if classification fails, -2 if not decoded), float conf.
+ */
+public class BinaryResultSink implements ResultSink {
+
+    public static final byte NO_LABEL = -1;
+    public static final byte DECODE_ERROR = -2;
+
+    private final DataOutputStream out;
+
+    public BinaryResultSink(OutputStream stream) {
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    @Override
+    public void write(String name, Classification result) throws IOException {
+        out.writeUTF(name);
+        if (result == null) {
+            out.writeByte(DECODE_ERROR);
+            out.writeFloat(0);
+        } else {
+            out.writeByte(result.getLabel() == null ? NO_LABEL : Byte.parseByte(result.getLabel()));
+            out.writeFloat(result.getConf());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
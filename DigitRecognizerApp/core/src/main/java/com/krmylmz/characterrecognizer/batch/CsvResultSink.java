@@ -0,0 +1,42 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes "name,label,conf" lines. Label is "?" if classification fails and
+ * "error" if the image could not be decoded.
+ */
+public class CsvResultSink implements ResultSink {
+
+    private final BufferedWriter writer;
+
+    public CsvResultSink(Writer out) throws IOException {
+        writer = new BufferedWriter(out);
+        writer.write("name,label,conf\n");
+    }
+
+    @Override
+    public void write(String name, Classification result) throws IOException {
+        // names with separators are quoted
+        if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0) {
+            name = '"' + name.replace("\"", "\"\"") + '"';
+        }
+
+        if (result == null) {
+            writer.write(name + ",error,0\n");
+        } else {
+            writer.write(String.format(Locale.ENGLISH, "%s,%s,%f\n", name,
+                    result.getLabel() == null ? "?" : result.getLabel(), result.getConf()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
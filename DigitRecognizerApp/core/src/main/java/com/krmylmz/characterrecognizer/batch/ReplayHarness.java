@@ -0,0 +1,335 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.drawing.StrokePainter;
+import com.krmylmz.characterrecognizer.drawing.StrokeRasterizer;
+import com.krmylmz.characterrecognizer.drawing.StrokeStore;
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+import com.krmylmz.characterrecognizer.models.ConvNetClassifier;
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+import com.krmylmz.characterrecognizer.recording.RecognitionLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays recorded traffic through the recognition pipeline on a plain JVM, to compare
+ * performance changes on real inputs. Two corpora are supported:
+ *
+ *   - a RecognitionLog folder: the logged model inputs are classified again and compared
+ *     with the labels logged for one model id
+ *   - a stroke log, records of (int label, StrokeStore.writeTo) written with
+ *     writeStrokeRecord, e.g. externalStorage/Pictures/strokes.bin of a debug build;
+ *     label -1 means unknown
+ *
+ * Strokes are replayed through one of the app's two paths: rasterised with
+ * StrokeRasterizer (processStrokes), or with paintCanvas painted into the inked region
+ * of the canvas by StrokePainter, untimed, then resized and preprocessed like
+ * processBitmap does with PixelPreprocessor.resizeCanvas and toPixels. PixelPreprocessor
+ * stands in for the app's OpenCV Preprocessor, and StrokePainter only approximates
+ * DrawView's antialiased curves, so canvas path agreement can differ slightly from the app.
+ * A RecognitionLog holds model inputs only, so it replays recognition alone.
+ *
+ * The corpus is loaded into memory first and replayed in order on the calling thread,
+ * so runs are deterministic. Reports throughput, p50/p99 latency, bytes allocated per
+ * recognition (HotSpot only) and agreement with the recorded labels.
+ */
+public class ReplayHarness {
+
+    // MNIST dataset property
+    private static final int PIXEL_WIDTH = 28;
+    private static final int DRAWING_WIDTH = 20;
+
+    /**
+     * Results of a replay.
+     */
+    public static class Report {
+        private final int recognitions;
+        private final long nanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long allocatedBytes;
+        private final int compared;
+        private final int agreed;
+
+        Report(int recognitions, long nanos, long p50Nanos, long p99Nanos,
+               long allocatedBytes, int compared, int agreed) {
+            this.recognitions = recognitions;
+            this.nanos = nanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.compared = compared;
+            this.agreed = agreed;
+        }
+
+        public double getRecognitionsPerSecond() {
+            return nanos == 0 ? 0 : recognitions * 1e9 / nanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * @return bytes allocated per recognition, -1 if the JVM can't tell
+         */
+        public double getAllocatedBytesPerRecognition() {
+            return allocatedBytes < 0 || recognitions == 0 ? -1 : allocatedBytes * 1.0 / recognitions;
+        }
+
+        /**
+         * @return share of the recognitions with a recorded label that got the same label
+         */
+        public double getAgreement() {
+            return compared == 0 ? 0 : agreed * 1.0 / compared;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH,
+                    "%d recognitions, %.1f/s, p50 %.1f us, p99 %.1f us, %.0f B/recognition, agreement %.4f (%d/%d)",
+                    recognitions, getRecognitionsPerSecond(), p50Nanos / 1e3, p99Nanos / 1e3,
+                    getAllocatedBytesPerRecognition(), getAgreement(), agreed, compared);
+        }
+    }
+
+    // one recorded input, exactly one of pixels and strokes is set
+    private static class Sample {
+        final float[] pixels;
+        final StrokeStore strokes;
+        final int label;
+
+        Sample(float[] pixels, StrokeStore strokes, int label) {
+            this.pixels = pixels;
+            this.strokes = strokes;
+            this.label = label;
+        }
+    }
+
+    private final List<Sample> samples = new ArrayList<>();
+    private final float strokeWidth;
+    private final float canvasWidth;
+    private final boolean paintCanvas;
+
+    /**
+     * Replays strokes through StrokeRasterizer.
+     * @param strokeWidth stroke width the stroke log was drawn with, see DrawPath
+     * @param canvasWidth width of the square DrawView canvas the strokes were drawn on,
+     *                    ink outside it is clipped like in the app
+     */
+    public ReplayHarness(float strokeWidth, float canvasWidth) {
+        this(strokeWidth, canvasWidth, false);
+    }
+
+    /**
+     * @param paintCanvas if true strokes are replayed through the canvas path instead,
+     *                    see the class comment
+     */
+    public ReplayHarness(float strokeWidth, float canvasWidth, boolean paintCanvas) {
+        this.strokeWidth = strokeWidth;
+        this.canvasWidth = canvasWidth;
+        this.paintCanvas = paintCanvas;
+    }
+
+    /**
+     * Adds the records of modelId in a RecognitionLog folder.
+     */
+    public void loadRecognitionLog(File dir, int modelId) {
+        for (RecognitionLog.Record record : RecognitionLog.read(dir)) {
+            if (record.getModelId() != modelId) {
+                continue;
+            }
+            float[] pixels = new float[RecognitionLog.INPUT_SIZE];
+            record.getInput(pixels);
+            samples.add(new Sample(pixels, null, record.getLabel()));
+        }
+    }
+
+    /**
+     * Adds the records of a stroke log.
+     */
+    public void loadStrokeLog(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int label;
+                try {
+                    label = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                samples.add(new Sample(null, StrokeStore.readFrom(in), label));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Appends one stroke log record.
+     * @param label expected label, -1 if unknown
+     */
+    public static void writeStrokeRecord(DataOutput out, int label, StrokeStore strokes) throws IOException {
+        out.writeInt(label);
+        strokes.writeTo(out);
+    }
+
+    public int getSampleCount() {
+        return samples.size();
+    }
+
+    /**
+     * Replays the corpus warmupPasses times unmeasured, then once measured.
+     */
+    public Report run(Classifier classifier, int warmupPasses) {
+        Pipeline pipeline = new Pipeline();
+
+        for (int pass = 0; pass < warmupPasses; ++pass) {
+            for (Sample sample : samples) {
+                pipeline.paint(sample);
+                pipeline.recognize(sample, classifier);
+            }
+        }
+
+        long[] latencies = new long[samples.size()];
+        int compared = 0;
+        int agreed = 0;
+
+        // throughput is over the timed part only, painting the canvas is not
+        long nanos = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < samples.size(); ++i) {
+            Sample sample = samples.get(i);
+            pipeline.paint(sample);
+            long t0 = System.nanoTime();
+            Classification res = pipeline.recognize(sample, classifier);
+            latencies[i] = System.nanoTime() - t0;
+            nanos += latencies[i];
+
+            if (sample.label >= 0) {
+                ++compared;
+                if (res.getLabel() != null && Integer.parseInt(res.getLabel()) == sample.label) {
+                    ++agreed;
+                }
+            }
+        }
+        long allocatedAfter = allocatedBytes();
+
+        Arrays.sort(latencies);
+        return new Report(samples.size(), nanos, percentile(latencies, 0.50), percentile(latencies, 0.99),
+                allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore, compared, agreed);
+    }
+
+    // buffers of one run, reused for every sample
+    private class Pipeline {
+        final int canvas = (int) canvasWidth;
+        final StrokeRasterizer rasterizer = new StrokeRasterizer(canvasWidth, canvasWidth);
+        final PixelPreprocessor preprocessor = new PixelPreprocessor(PIXEL_WIDTH);
+        final float[] input = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+        final byte[] region = paintCanvas ? new byte[canvas * canvas] : null;
+        final byte[] resized = new byte[PIXEL_WIDTH * PIXEL_WIDTH];
+        int left, top, width, height;
+
+        // the canvas path's inked region, like DrawView.snapshot reads it; not timed
+        void paint(Sample sample) {
+            if (!paintCanvas || sample.strokes == null) {
+                return;
+            }
+            width = 0;
+            height = 0;
+            if (sample.strokes.isEmpty()) {
+                return;
+            }
+            int pad = (int) (strokeWidth / 2) + 2;
+            left = Math.max((int) sample.strokes.getMinX() - pad, 0);
+            top = Math.max((int) sample.strokes.getMinY() - pad, 0);
+            width = Math.max(Math.min((int) sample.strokes.getMaxX() + pad + 1, canvas) - left, 0);
+            height = Math.max(Math.min((int) sample.strokes.getMaxY() + pad + 1, canvas) - top, 0);
+            StrokePainter.paint(sample.strokes, strokeWidth, region, left, top, width, height);
+        }
+
+        Classification recognize(Sample sample, Classifier classifier) {
+            if (sample.strokes == null) {
+                return classifier.recognize(sample.pixels);
+            }
+            if (paintCanvas) {
+                PixelPreprocessor.resizeCanvas(region, left, top, width, height, canvas, canvas,
+                        StrokePainter.BACKGROUND, PIXEL_WIDTH, resized);
+                preprocessor.toPixels(resized, PIXEL_WIDTH, PIXEL_WIDTH, StrokePainter.BACKGROUND,
+                        DRAWING_WIDTH, input, 0);
+            } else {
+                rasterizer.rasterize(sample.strokes, strokeWidth, input, 0);
+            }
+            return classifier.recognize(input);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min((int) (p * sorted.length), sorted.length - 1)];
+    }
+
+    // bytes allocated by this thread so far, -1 if not supported
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Usage: ReplayHarness weights.cnn (recognitionLogDir | strokes.bin) [modelId] [warmupPasses] [strokeWidth] [canvasWidth] [strokes | canvas]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayHarness weights.cnn (recognitionLogDir | strokes.bin) [modelId] [warmupPasses] [strokeWidth] [canvasWidth] [strokes | canvas]");
+            System.exit(1);
+        }
+
+        int modelId = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        float strokeWidth = args.length > 4 ? Float.parseFloat(args[4]) : 60;
+        float canvasWidth = args.length > 5 ? Float.parseFloat(args[5]) : 1080;
+        boolean paintCanvas = args.length > 6 && args[6].equals("canvas");
+
+        Classifier classifier;
+        InputStream weights = new FileInputStream(args[0]);
+        try {
+            classifier = ConvNetClassifier.create(new File(args[0]).getName(), weights);
+        } finally {
+            weights.close();
+        }
+
+        ReplayHarness harness = new ReplayHarness(strokeWidth, canvasWidth, paintCanvas);
+        File corpus = new File(args[1]);
+        if (corpus.isDirectory()) {
+            harness.loadRecognitionLog(corpus, modelId);
+        } else {
+            harness.loadStrokeLog(corpus);
+        }
+
+        System.out.println(harness.run(classifier, warmup));
+    }
+}
@@ -0,0 +1,18 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives batch recognition results as they are produced.
+ */
+public interface ResultSink extends Closeable {
+
+    /**
+     * @param name image path relative to the recognized folder
+     * @param result classification, null if the image could not be decoded
+     */
+    void write(String name, Classification result) throws IOException;
+}
@@ -0,0 +1,111 @@
+package com.krmylmz.characterrecognizer.drawing;
+
+import java.util.Arrays;
+
+/**
+ * Paints strokes into a gray canvas the way DrawView paints them into its bitmap, so the
+ * canvas path (PixelPreprocessor.resizeCanvas and toPixels) can run on a plain JVM:
+ * black round capped lines of the stroke width on white. Unlike DrawView, segments are
+ * straight lines between the stored points instead of quads through their midpoints, and
+ * the edges are not antialiased.
+ */
+public class StrokePainter {
+
+    public static final int BACKGROUND = 0xff;
+    public static final int INK = 0;
+
+    private StrokePainter() {
+    }
+
+    /**
+     * Paints strokes into a region of the canvas, the rest of the canvas is not touched.
+     * @param gray region of width * height pixels, row major
+     * @param left left of the region on the canvas
+     * @param top top of the region on the canvas
+     */
+    public static void paint(StrokeStore strokes, float strokeWidth,
+                             byte[] gray, int left, int top, int width, int height) {
+        Arrays.fill(gray, 0, width * height, (byte) BACKGROUND);
+        float r = strokeWidth / 2;
+        for (int s = 0; s < strokes.getStrokeCount(); ++s) {
+            int start = strokes.getStrokeStart(s);
+            int end = strokes.getStrokeEnd(s);
+            // a single point stroke is a dot
+            float x0 = strokes.getX(start) - left;
+            float y0 = strokes.getY(start) - top;
+            segment(gray, width, height, x0, y0, x0, y0, r);
+            for (int p = start + 1; p < end; ++p) {
+                float x1 = strokes.getX(p) - left;
+                float y1 = strokes.getY(p) - top;
+                segment(gray, width, height, x0, y0, x1, y1, r);
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+    }
+
+    // inks the pixels whose centers are within r of the segment; that set is convex,
+    // so every row is one span: the union of the spans of the end caps and the band
+    private static void segment(byte[] gray, int width, int height,
+                                float x0, float y0, float x1, float y1, float r) {
+        int minY = Math.max((int) Math.floor(Math.min(y0, y1) - r), 0);
+        int maxY = Math.min((int) Math.ceil(Math.max(y0, y1) + r), height - 1);
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        for (int y = minY; y <= maxY; ++y) {
+            float cy = y + 0.5f;
+            float lo = Float.POSITIVE_INFINITY;
+            float hi = Float.NEGATIVE_INFINITY;
+
+            // end caps
+            float h0 = r * r - (cy - y0) * (cy - y0);
+            if (h0 >= 0) {
+                h0 = (float) Math.sqrt(h0);
+                lo = Math.min(lo, x0 - h0);
+                hi = Math.max(hi, x0 + h0);
+            }
+            float h1 = r * r - (cy - y1) * (cy - y1);
+            if (h1 >= 0) {
+                h1 = (float) Math.sqrt(h1);
+                lo = Math.min(lo, x1 - h1);
+                hi = Math.max(hi, x1 + h1);
+            }
+
+            // band: 0 <= (c - p0).d <= |d|^2 and |(c - p0) x d| <= r |d|, linear in the x of c
+            if (length > 0) {
+                float bandLo = Float.NEGATIVE_INFINITY;
+                float bandHi = Float.POSITIVE_INFINITY;
+                float py = cy - y0;
+                if (dx != 0) {
+                    float a = (-py * dy) / dx;
+                    float b = (length * length - py * dy) / dx;
+                    bandLo = Math.max(bandLo, Math.min(a, b));
+                    bandHi = Math.min(bandHi, Math.max(a, b));
+                } else if (py * dy < 0 || py * dy > length * length) {
+                    bandHi = Float.NEGATIVE_INFINITY;
+                }
+                if (dy != 0) {
+                    float a = (py * dx - r * length) / dy;
+                    float b = (py * dx + r * length) / dy;
+                    bandLo = Math.max(bandLo, Math.min(a, b));
+                    bandHi = Math.min(bandHi, Math.max(a, b));
+                } else if (Math.abs(py * dx) > r * length) {
+                    bandHi = Float.NEGATIVE_INFINITY;
+                }
+                if (bandLo <= bandHi) {
+                    lo = Math.min(lo, x0 + bandLo);
+                    hi = Math.max(hi, x0 + bandHi);
+                }
+            }
+
+            // pixels with lo <= x + 0.5 <= hi
+            int from = Math.max((int) Math.ceil(lo - 0.5f), 0);
+            int to = Math.min((int) Math.floor(hi - 0.5f), width - 1);
+            if (from <= to) {
+                Arrays.fill(gray, y * width + from, y * width + to + 1, (byte) INK);
+            }
+        }
+    }
+}
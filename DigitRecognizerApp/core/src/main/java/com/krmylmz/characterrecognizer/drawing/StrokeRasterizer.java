@@ -0,0 +1,199 @@
+package com.krmylmz.characterrecognizer.drawing;
+
+import java.util.Arrays;
+
+/**
+ * Draws the strokes straight into the 28x28 model input, without the full resolution
+ * bitmap, its copy and the OpenCV resize. The ink bounding box (stroke width included) is
+ * fitted to the 20x20 center like MNIST, strokes are drawn as round capped lines into a
+ * SUPERSAMPLE times larger coverage buffer, which is then area averaged to 28x28.
+ * Segments are straight lines between the stored points. Ink outside the canvas is
+ * clipped like DrawView clips it to its bitmap, both from the bounds and the coverage.
+ *
+ * Not thread safe, the coverage buffer is reused. rasterizeAppended keeps it between calls,
+ * so a stroke that grows inside its bounds only costs its new segments.
+ */
+public class StrokeRasterizer {
+
+    // MNIST dataset property
+    public static final int PIXEL_WIDTH = 28;
+    public static final int DRAWING_WIDTH = 20;
+
+    public static final int SUPERSAMPLE = 4;
+
+    private static final int SIZE = PIXEL_WIDTH * SUPERSAMPLE;
+
+    private final byte[] coverage = new byte[SIZE * SIZE];
+
+    // canvas the strokes were drawn on, in view coordinates
+    private final float canvasLeft, canvasTop, canvasRight, canvasBottom;
+    // coverage cells inside the canvas for the current fit, inclusive
+    private int clipX0, clipY0, clipX1, clipY1;
+
+    // points and ink bounds (stroke width included) the coverage buffer holds
+    private int drawnPoints = 0;
+    private float drawnMinX, drawnMinY, drawnMaxX, drawnMaxY;
+
+    /**
+     * Unbounded canvas, no ink is clipped.
+     */
+    public StrokeRasterizer() {
+        canvasLeft = Float.NEGATIVE_INFINITY;
+        canvasTop = Float.NEGATIVE_INFINITY;
+        canvasRight = Float.POSITIVE_INFINITY;
+        canvasBottom = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param canvasWidth width of the DrawView bitmap, ink right of it is clipped
+     * @param canvasHeight height of the DrawView bitmap, ink below it is clipped
+     */
+    public StrokeRasterizer(float canvasWidth, float canvasHeight) {
+        canvasLeft = 0;
+        canvasTop = 0;
+        canvasRight = canvasWidth;
+        canvasBottom = canvasHeight;
+    }
+
+    /**
+     * Writes strokes as model input, 0 for background and 1 for full ink.
+     * An empty drawing, or one entirely outside the canvas, gives all zeros.
+     * @param strokes strokes in view coordinates
+     * @param strokeWidth stroke width in view coordinates
+     * @param pixelsOut float array of at least offset + 28 * 28 length
+     * @param offset index of the first pixel in pixelsOut
+     */
+    public void rasterize(StrokeStore strokes, float strokeWidth, float[] pixelsOut, int offset) {
+        reset();
+        rasterizeAppended(strokes, strokeWidth, pixelsOut, offset);
+    }
+
+    /**
+     * Same result as rasterize, but while the ink bounds stay the same only the points
+     * added since the last call are drawn into the kept coverage buffer. strokes must
+     * only have grown since the last call, call reset() when they were cleared.
+     */
+    public void rasterizeAppended(StrokeStore strokes, float strokeWidth, float[] pixelsOut, int offset) {
+        float radius = strokeWidth / 2;
+        // ink bounds (stroke width included) inside the canvas
+        float minX = Math.max(strokes.getMinX() - radius, canvasLeft);
+        float minY = Math.max(strokes.getMinY() - radius, canvasTop);
+        float maxX = Math.min(strokes.getMaxX() + radius, canvasRight);
+        float maxY = Math.min(strokes.getMaxY() + radius, canvasBottom);
+
+        if (strokes.isEmpty() || maxX <= minX || maxY <= minY) {
+            Arrays.fill(coverage, (byte) 0);
+            drawnPoints = 0;
+        } else {
+
+            int from = 0;
+            if (drawnPoints > 0 && minX == drawnMinX && minY == drawnMinY
+                    && maxX == drawnMaxX && maxY == drawnMaxY) {
+                // same fit, the coverage of the older points is still right
+                from = drawnPoints;
+            } else {
+                Arrays.fill(coverage, (byte) 0);
+            }
+
+            float width = maxX - minX;
+            float height = maxY - minY;
+
+            // longer side to 20 (x SUPERSAMPLE), centered in the 28 (x SUPERSAMPLE) square
+            float scale = DRAWING_WIDTH * SUPERSAMPLE / Math.max(width, height);
+            float shiftX = (SIZE - width * scale) / 2 - minX * scale;
+            float shiftY = (SIZE - height * scale) / 2 - minY * scale;
+            float r = radius * scale;
+
+            // cells whose center is inside the canvas
+            clipX0 = Math.max((int) Math.ceil(canvasLeft * scale + shiftX - 0.5f), 0);
+            clipY0 = Math.max((int) Math.ceil(canvasTop * scale + shiftY - 0.5f), 0);
+            clipX1 = Math.min((int) Math.ceil(canvasRight * scale + shiftX - 0.5f) - 1, SIZE - 1);
+            clipY1 = Math.min((int) Math.ceil(canvasBottom * scale + shiftY - 0.5f) - 1, SIZE - 1);
+
+            for (int stroke = 0; stroke < strokes.getStrokeCount(); ++stroke) {
+                int start = strokes.getStrokeStart(stroke);
+                int end = strokes.getStrokeEnd(stroke);
+                if (end <= from) {
+                    continue;
+                }
+
+                // segments ending at a point that is not drawn yet
+                int first = Math.max(start + 1, from);
+                float ax = strokes.getX(first - 1) * scale + shiftX;
+                float ay = strokes.getY(first - 1) * scale + shiftY;
+                // a single point stroke is a dot
+                if (end - start == 1) {
+                    drawSegment(ax, ay, ax, ay, r);
+                }
+                for (int p = first; p < end; ++p) {
+                    float bx = strokes.getX(p) * scale + shiftX;
+                    float by = strokes.getY(p) * scale + shiftY;
+                    drawSegment(ax, ay, bx, by, r);
+                    ax = bx;
+                    ay = by;
+                }
+            }
+
+            drawnPoints = strokes.getPointCount();
+            drawnMinX = minX;
+            drawnMinY = minY;
+            drawnMaxX = maxX;
+            drawnMaxY = maxY;
+        }
+
+        // area average SUPERSAMPLE x SUPERSAMPLE blocks
+        float norm = 1.0f / (SUPERSAMPLE * SUPERSAMPLE);
+        for (int y = 0; y < PIXEL_WIDTH; ++y) {
+            for (int x = 0; x < PIXEL_WIDTH; ++x) {
+                int sum = 0;
+                for (int sy = 0; sy < SUPERSAMPLE; ++sy) {
+                    int row = (y * SUPERSAMPLE + sy) * SIZE + x * SUPERSAMPLE;
+                    for (int sx = 0; sx < SUPERSAMPLE; ++sx) {
+                        sum += coverage[row + sx];
+                    }
+                }
+                pixelsOut[offset + y * PIXEL_WIDTH + x] = sum * norm;
+            }
+        }
+    }
+
+    /**
+     * Forgets the drawn points, the next rasterizeAppended draws everything.
+     */
+    public void reset() {
+        drawnPoints = 0;
+    }
+
+    /**
+     * Marks every coverage cell inside the canvas whose center is within r of
+     * segment (ax, ay)-(bx, by).
+     */
+    private void drawSegment(float ax, float ay, float bx, float by, float r) {
+        int x0 = Math.max((int) Math.floor(Math.min(ax, bx) - r), clipX0);
+        int x1 = Math.min((int) Math.ceil(Math.max(ax, bx) + r), clipX1);
+        int y0 = Math.max((int) Math.floor(Math.min(ay, by) - r), clipY0);
+        int y1 = Math.min((int) Math.ceil(Math.max(ay, by) + r), clipY1);
+
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSq = dx * dx + dy * dy;
+        float rSq = r * r;
+
+        for (int y = y0; y <= y1; ++y) {
+            float py = y + 0.5f;
+            for (int x = x0; x <= x1; ++x) {
+                float px = x + 0.5f;
+
+                // closest point of the segment
+                float t = (lengthSq == 0) ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+                t = Math.max(0, Math.min(1, t));
+                float ex = ax + t * dx - px;
+                float ey = ay + t * dy - py;
+
+                if (ex * ex + ey * ey <= rSq) {
+                    coverage[y * SIZE + x] = 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.krmylmz.characterrecognizer.drawing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * All strokes of a drawing as points packed in one growable float array, (x, y, t) per
+ * point, with the index of the first point of every stroke. t is in milliseconds since
+ * the first point of the drawing. No Path or per point objects are kept, so bounding
+ * boxes, replay, serialisation and stroke features are cheap.
+ */
+public class StrokeStore {
+
+    // floats per point
+    public static final int STRIDE = 3;
+
+    private float[] points = new float[256 * STRIDE];
+    private int pointCount = 0;
+
+    private int[] strokeStarts = new int[16];
+    private int strokeCount = 0;
+
+    // ink bounds of the point coordinates
+    private float minX, minY, maxX, maxY;
+
+    /**
+     * Starts a new stroke at (x, y).
+     */
+    public void beginStroke(float x, float y, float t) {
+        if (strokeCount == strokeStarts.length) {
+            strokeStarts = Arrays.copyOf(strokeStarts, strokeCount * 2);
+        }
+        strokeStarts[strokeCount++] = pointCount;
+        addPoint(x, y, t);
+    }
+
+    /**
+     * Appends a point to the last stroke.
+     */
+    public void addPoint(float x, float y, float t) {
+        if ((pointCount + 1) * STRIDE > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        int i = pointCount * STRIDE;
+        points[i] = x;
+        points[i + 1] = y;
+        points[i + 2] = t;
+
+        if (pointCount == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        ++pointCount;
+    }
+
+    public void clear() {
+        pointCount = 0;
+        strokeCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return pointCount == 0;
+    }
+
+    public int getStrokeCount() {
+        return strokeCount;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return index of the first point of stroke
+     */
+    public int getStrokeStart(int stroke) {
+        return strokeStarts[stroke];
+    }
+
+    /**
+     * @return index after the last point of stroke
+     */
+    public int getStrokeEnd(int stroke) {
+        return (stroke + 1 < strokeCount) ? strokeStarts[stroke + 1] : pointCount;
+    }
+
+    public float getX(int point) {
+        return points[point * STRIDE];
+    }
+
+    public float getY(int point) {
+        return points[point * STRIDE + 1];
+    }
+
+    public float getT(int point) {
+        return points[point * STRIDE + 2];
+    }
+
+    /**
+     * @return the packed points, only the first getPointCount() * STRIDE values are valid
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Writes stroke count, stroke starts, point count and the packed points.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(strokeCount);
+        for (int i = 0; i < strokeCount; ++i) {
+            out.writeInt(strokeStarts[i]);
+        }
+        out.writeInt(pointCount);
+        for (int i = 0; i < pointCount * STRIDE; ++i) {
+            out.writeFloat(points[i]);
+        }
+    }
+
+    /**
+     * Reads strokes written by writeTo.
+     */
+    public static StrokeStore readFrom(DataInput in) throws IOException {
+        StrokeStore store = new StrokeStore();
+        int strokes = in.readInt();
+        int[] starts = new int[Math.max(strokes, 1)];
+        for (int i = 0; i < strokes; ++i) {
+            starts[i] = in.readInt();
+        }
+        int count = in.readInt();
+
+        // replay through addPoint so the bounds are computed
+        int stroke = 0;
+        for (int p = 0; p < count; ++p) {
+            float x = in.readFloat();
+            float y = in.readFloat();
+            float t = in.readFloat();
+            if (stroke < strokes && starts[stroke] == p) {
+                store.beginStroke(x, y, t);
+                ++stroke;
+            } else {
+                store.addPoint(x, y, t);
+            }
+        }
+        return store;
+    }
+}
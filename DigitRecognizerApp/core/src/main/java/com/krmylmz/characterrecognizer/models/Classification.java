@@ -0,0 +1,56 @@
+package com.krmylmz.characterrecognizer.models;
+
+/**
+ * Created by marianne-linhares on 20/04/17.
+ */
+
+public class Classification {
+
+    //labels of the class indices, so selecting a class builds no String
+    private static final String[] LABELS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
+
+    //conf is the output
+    private float conf;
+    //input label
+    private String label;
+
+    Classification() {
+        this.conf = -1.0F;
+        this.label = null;
+    }
+
+    void update(float conf, String label) {
+        this.conf = conf;
+        this.label = label;
+    }
+
+    //the most confident of numClasses scores starting at offset, above threshold;
+    //the label is the class index, null if no score is above threshold.
+    //Allocates the result only.
+    public static Classification select(float[] scores, int offset, int numClasses, float threshold) {
+        int best = -1;
+        for (int i = 0; i < numClasses; ++i) {
+            if (scores[offset + i] > threshold && (best < 0 || scores[offset + i] > scores[offset + best])) {
+                best = i;
+            }
+        }
+
+        Classification ans = new Classification();
+        if (best >= 0) {
+            ans.update(scores[offset + best], labelOf(best));
+        }
+        return ans;
+    }
+
+    public static String labelOf(int classIndex) {
+        return classIndex < LABELS.length ? LABELS[classIndex] : String.valueOf(classIndex);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public float getConf() {
+        return conf;
+    }
+}
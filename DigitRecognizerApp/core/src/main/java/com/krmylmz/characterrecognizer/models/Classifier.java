@@ -1,7 +1,5 @@
 package com.krmylmz.characterrecognizer.models;
 
-import android.content.res.AssetManager;
-
 /**
  * Created by Piasy{github.com/Piasy} on 29/05/2017.
  */
@@ -14,4 +12,11 @@ public interface Classifier {
     String name();
 
     Classification recognize(final float[] pixels);
+
+    //classifies batchSize images at once, pixels holds them one after another
+    Classification[] recognizeBatch(final float[] pixels, int batchSize);
+
+    //class probabilities of the last recognize call, overwritten by the next call;
+    //recognizeBatch does not change them
+    float[] getLastScores();
 }
@@ -0,0 +1,294 @@
+package com.krmylmz.characterrecognizer.models;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pure Java forward pass of a small Keras style convnet (valid Conv2D, MaxPooling2D,
+ * Flatten + Dense). Dense layers are turned into convolutions when the weights are loaded:
+ * the first dense layer after the conv stack becomes a KxK convolution (K is the feature map
+ * size for the nominal input, e.g. 4x4) and the following ones 1x1 convolutions. For a
+ * nominal size input this is the usual classification; for a larger image the same pass
+ * gives a dense grid of class scores, one per window position, sharing all conv features.
+ *
+ * Weights file (big endian, as written by DataOutputStream):
+ *      int magic "CNN1", int inputSize, int layerCount, then per layer
+ *      conv:  int 0, int k, int in, int out, int activation, float[k*k*in*out], float[out]
+ *      pool:  int 1, int size
+ *      dense: int 2, int in, int out, int activation, float[in*out], float[out]
+ * Weight layouts are Keras' own: conv [ky][kx][in][out], dense [in][out], channels last.
+ * Activations: 0 none, 1 relu, 2 softmax.
+ *
+ * Not thread safe, scratch buffers are reused between calls.
+ */
+public class ConvNet {
+
+    public static final int MAGIC = 0x434E4E31; // "CNN1"
+
+    public static final int CONV = 0;
+    public static final int POOL = 1;
+    public static final int DENSE = 2;
+
+    public static final int ACTIVATION_NONE = 0;
+    public static final int ACTIVATION_RELU = 1;
+    public static final int ACTIVATION_SOFTMAX = 2;
+
+    private static class Layer {
+        int type;
+        int k;          // kernel or pool size
+        int in;
+        int out;
+        int activation;
+        float[] weights;
+        float[] bias;
+    }
+
+    private final int inputSize;
+    private final List<Layer> layers;
+    private final int numClasses;
+    private final int stride;
+
+    // ping-pong scratch buffers
+    private float[] bufferA = new float[0];
+    private float[] bufferB = new float[0];
+
+    // shape of the last run
+    private int outHeight;
+    private int outWidth;
+
+    private ConvNet(int inputSize, List<Layer> layers) {
+        this.inputSize = inputSize;
+        this.layers = layers;
+
+        int s = 1;
+        int channels = 1;
+        for (Layer layer : layers) {
+            if (layer.type == POOL) {
+                s *= layer.k;
+            } else {
+                channels = layer.out;
+            }
+        }
+        this.stride = s;
+        this.numClasses = channels;
+    }
+
+    /**
+     * Reads a weights file, see class comment for the format.
+     */
+    public static ConvNet load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a CNN1 weights file");
+        }
+
+        int inputSize = in.readInt();
+        int layerCount = in.readInt();
+
+        // track the feature map size to turn the first dense layer into a conv
+        int size = inputSize;
+        List<Layer> layers = new ArrayList<>();
+        for (int i = 0; i < layerCount; ++i) {
+            Layer layer = new Layer();
+            layer.type = in.readInt();
+            switch (layer.type) {
+                case CONV:
+                    layer.k = in.readInt();
+                    layer.in = in.readInt();
+                    layer.out = in.readInt();
+                    layer.activation = in.readInt();
+                    layer.weights = readFloats(in, layer.k * layer.k * layer.in * layer.out);
+                    layer.bias = readFloats(in, layer.out);
+                    size = size - layer.k + 1;
+                    break;
+                case POOL:
+                    layer.k = in.readInt();
+                    size = size / layer.k;
+                    break;
+                case DENSE:
+                    int denseIn = in.readInt();
+                    layer.out = in.readInt();
+                    layer.activation = in.readInt();
+                    layer.weights = readFloats(in, denseIn * layer.out);
+                    layer.bias = readFloats(in, layer.out);
+                    // flatten order (y, x, c) is the conv weight order (ky, kx, in)
+                    layer.type = CONV;
+                    layer.k = size;
+                    layer.in = denseIn / (size * size);
+                    size = 1;
+                    break;
+                default:
+                    throw new IOException("Unknown layer type " + layer.type);
+            }
+            layers.add(layer);
+        }
+
+        return new ConvNet(inputSize, layers);
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    /**
+     * @return input size the network was trained for, e.g. 28
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * @return input pixels between two neighbouring score map positions
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    public int getOutputHeight() {
+        return outHeight;
+    }
+
+    public int getOutputWidth() {
+        return outWidth;
+    }
+
+    /**
+     * Runs the network over a single channel image.
+     * For a getInputSize() square image the result is one score vector.
+     * @param input height * width pixels, row by row
+     * @return scores, [y][x][class] of getOutputHeight() x getOutputWidth() positions.
+     *         The array is a scratch buffer, valid until the next call.
+     */
+    public float[] run(float[] input, int height, int width) {
+        float[] src = input;
+        int h = height;
+        int w = width;
+        int c = 1;
+
+        // indexed, an iterator would be allocated on every call
+        for (int l = 0; l < layers.size(); ++l) {
+            Layer layer = layers.get(l);
+            int oh;
+            int ow;
+            if (layer.type == POOL) {
+                oh = h / layer.k;
+                ow = w / layer.k;
+            } else {
+                oh = h - layer.k + 1;
+                ow = w - layer.k + 1;
+            }
+            int oc = (layer.type == POOL) ? c : layer.out;
+
+            float[] dst = (src == bufferA) ? bufferB : bufferA;
+            if (dst.length < oh * ow * oc) {
+                dst = new float[oh * ow * oc];
+                if (src == bufferA) {
+                    bufferB = dst;
+                } else {
+                    bufferA = dst;
+                }
+            }
+
+            if (layer.type == POOL) {
+                maxPool(src, h, w, c, layer.k, dst, oh, ow);
+            } else {
+                conv(src, w, layer, dst, oh, ow);
+            }
+
+            src = dst;
+            h = oh;
+            w = ow;
+            c = oc;
+        }
+
+        outHeight = h;
+        outWidth = w;
+        return src;
+    }
+
+    private static void conv(float[] src, int w, Layer layer, float[] dst, int oh, int ow) {
+        int k = layer.k;
+        int ci = layer.in;
+        int co = layer.out;
+        float[] weights = layer.weights;
+
+        for (int oy = 0; oy < oh; ++oy) {
+            for (int ox = 0; ox < ow; ++ox) {
+                int outBase = (oy * ow + ox) * co;
+                System.arraycopy(layer.bias, 0, dst, outBase, co);
+
+                for (int ky = 0; ky < k; ++ky) {
+                    for (int kx = 0; kx < k; ++kx) {
+                        int inBase = ((oy + ky) * w + ox + kx) * ci;
+                        int weightBase = (ky * k + kx) * ci * co;
+                        for (int c = 0; c < ci; ++c) {
+                            float v = src[inBase + c];
+                            // inputs are mostly background, relu outputs mostly zero
+                            if (v == 0) {
+                                continue;
+                            }
+                            int weightRow = weightBase + c * co;
+                            for (int o = 0; o < co; ++o) {
+                                dst[outBase + o] += v * weights[weightRow + o];
+                            }
+                        }
+                    }
+                }
+
+                activate(dst, outBase, co, layer.activation);
+            }
+        }
+    }
+
+    private static void activate(float[] values, int offset, int length, int activation) {
+        if (activation == ACTIVATION_RELU) {
+            for (int i = offset; i < offset + length; ++i) {
+                if (values[i] < 0) {
+                    values[i] = 0;
+                }
+            }
+        } else if (activation == ACTIVATION_SOFTMAX) {
+            float max = values[offset];
+            for (int i = offset + 1; i < offset + length; ++i) {
+                max = Math.max(max, values[i]);
+            }
+            float sum = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                values[i] = (float) Math.exp(values[i] - max);
+                sum += values[i];
+            }
+            for (int i = offset; i < offset + length; ++i) {
+                values[i] /= sum;
+            }
+        }
+    }
+
+    private static void maxPool(float[] src, int h, int w, int c, int p, float[] dst, int oh, int ow) {
+        for (int oy = 0; oy < oh; ++oy) {
+            for (int ox = 0; ox < ow; ++ox) {
+                int outBase = (oy * ow + ox) * c;
+                for (int ch = 0; ch < c; ++ch) {
+                    float max = -Float.MAX_VALUE;
+                    for (int py = 0; py < p; ++py) {
+                        int rowBase = ((oy * p + py) * w + ox * p) * c + ch;
+                        for (int px = 0; px < p; ++px) {
+                            max = Math.max(max, src[rowBase + px * c]);
+                        }
+                    }
+                    dst[outBase + ch] = max;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.krmylmz.characterrecognizer.models;
+
+import com.krmylmz.characterrecognizer.tracing.RecognitionEvents;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Classifier backed by the pure Java ConvNet, no native inference library needed.
+ * Not thread safe, like TensorFlowClassifier.
+ */
+public class ConvNetClassifier implements Classifier {
+
+    // Only returns if at least this confidence
+    private static final float THRESHOLD = 0.1f;
+
+    private String name;
+    private ConvNet net;
+    // copy of the scores of the last recognize call, net.run returns a scratch buffer
+    // of the net that recognizeBatch overwrites
+    private float[] lastScores;
+    // one image of a batch, reused
+    private float[] batchImage;
+
+    //loads the weights file (see ConvNet), e.g. from assetManager.open(path) in the app
+    public static ConvNetClassifier create(String name, InputStream weights) throws IOException {
+        RecognitionEvents.Span span = RecognitionEvents.get().begin(RecognitionEvents.MODEL_LOAD);
+        ConvNetClassifier c = new ConvNetClassifier();
+        c.name = name;
+        c.net = ConvNet.load(weights);
+        c.lastScores = new float[c.net.getNumClasses()];
+        int size = c.net.getInputSize();
+        span.model(name).dims(size, size).end();
+        return c;
+    }
+
+    public ConvNet getNet() {
+        return net;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Classification recognize(final float[] pixels) {
+        int size = net.getInputSize();
+        float[] scores = net.run(pixels, size, size);
+        System.arraycopy(scores, 0, lastScores, 0, lastScores.length);
+        return Classification.select(lastScores, 0, lastScores.length, THRESHOLD);
+    }
+
+    @Override
+    public float[] getLastScores() {
+        return lastScores;
+    }
+
+    @Override
+    public Classification[] recognizeBatch(final float[] pixels, int batchSize) {
+        int size = net.getInputSize();
+        if (batchImage == null) {
+            batchImage = new float[size * size];
+        }
+        float[] image = batchImage;
+
+        Classification[] answers = new Classification[batchSize];
+        for (int b = 0; b < batchSize; ++b) {
+            System.arraycopy(pixels, b * image.length, image, 0, image.length);
+            answers[b] = Classification.select(net.run(image, size, size), 0, net.getNumClasses(), THRESHOLD);
+        }
+        return answers;
+    }
+}
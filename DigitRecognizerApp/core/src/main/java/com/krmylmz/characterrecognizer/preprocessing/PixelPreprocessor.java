@@ -0,0 +1,215 @@
+package com.krmylmz.characterrecognizer.preprocessing;
+
+import com.krmylmz.characterrecognizer.tracing.StageTracer;
+
+import java.util.Arrays;
+
+/**
+ * Preprocessor.toPixels on plain gray byte buffers, without OpenCV or Android classes:
+ * bounds of the drawing, crop with the same margins as Preprocessor.scale(), bilinear
+ * resize so the longer side is pixel, pad with background to size x size and write the
+ * model input, 0 for background and 1 for black pixels. Results match the OpenCV path
+ * up to the rounding of OpenCV's fixed point resize.
+ *
+ * Keeps its buffers between calls, so it does not allocate after the first call.
+ * Not thread safe, use one per thread.
+ */
+public class PixelPreprocessor {
+
+    private final int size;
+    private final byte[] padded;
+    private final int[] bounds = new int[4];
+
+    private StageTracer tracer;
+
+    /**
+     * @param size the pixel size of the model input, 28 for MNIST
+     */
+    public PixelPreprocessor(int size) {
+        this.size = size;
+        this.padded = new byte[size * size];
+    }
+
+    /**
+     * Times the bounds, scale/pad and pixels stages of toPixels.
+     * @param tracer null to stop tracing
+     */
+    public void setTracer(StageTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Whole pipeline: bounds, scale, padding and pixel extraction.
+     *
+     * @param gray pixels row by row, black drawing on background
+     * @param background background value in range (0, 255)
+     * @param pixel size of the longer side of the scaled drawing
+     * @param pixelsOut float array for the model input
+     * @param offset index of the first pixel in pixelsOut
+     */
+    public void toPixels(byte[] gray, int width, int height, int background, int pixel,
+                         float[] pixelsOut, int offset) {
+        long start = (tracer != null) ? tracer.start() : 0;
+
+        bounds(gray, width, height, background, bounds);
+        start = trace(StageTracer.BOUNDS, start);
+
+        cropScalePad(gray, width, height, bounds, background, pixel, size, padded);
+        start = trace(StageTracer.SCALE, start);
+
+        normalize(padded, size * size, pixelsOut, offset);
+        trace(StageTracer.PIXELS, start);
+    }
+
+    private long trace(int stage, long start) {
+        return (tracer != null) ? tracer.end(stage, start) : 0;
+    }
+
+    /**
+     * Bounding box of the pixels that are not background, rows are scanned in memory order.
+     * The whole image if there are none, like Preprocessor.getMatBoundaries*(int).
+     * @param boundsOut {top, bottom, left, right}
+     */
+    public static void bounds(byte[] gray, int width, int height, int background, int[] boundsOut) {
+        int top = -1;
+        int bottom = -1;
+        int left = width;
+        int right = -1;
+
+        for (int row = 0; row < height; ++row) {
+            int base = row * width;
+            for (int col = 0; col < width; ++col) {
+                if ((gray[base + col] & 0xff) != background) {
+                    if (top < 0) top = row;
+                    bottom = row;
+                    if (col < left) left = col;
+                    if (col > right) right = col;
+                }
+            }
+        }
+
+        if (top < 0) {
+            boundsOut[0] = 0;
+            boundsOut[1] = height - 1;
+            boundsOut[2] = 0;
+            boundsOut[3] = width - 1;
+            return;
+        }
+        boundsOut[0] = top;
+        boundsOut[1] = bottom;
+        boundsOut[2] = left;
+        boundsOut[3] = right;
+    }
+
+    /**
+     * Crop with Preprocessor.scale()'s margins, bilinear resize so the longer side is
+     * pixel, then pad with background to size x size like Preprocessor.padBackground.
+     * @param bounds {top, bottom, left, right}
+     * @param out size * size gray pixels
+     */
+    public static void cropScalePad(byte[] gray, int width, int height, int[] bounds, int background,
+                                    int pixel, int size, byte[] out) {
+        // same magic values as scale()
+        int y1 = (bounds[0] >= 1) ? bounds[0] - 1 : 0;
+        int y2 = (bounds[1] <= height - 1) ? bounds[1] + 1 : height;
+        int x1 = (bounds[2] >= 1) ? bounds[2] - 1 : 0;
+        int x2 = (bounds[3] <= width - 1) ? bounds[3] + 1 : width;
+        y2 = Math.min(y2, height);
+        x2 = Math.min(x2, width);
+
+        int cropWidth = x2 - x1;
+        int cropHeight = y2 - y1;
+        double scale = pixel * 1.0 / Math.max(x2 - x1 + 1, y2 - y1 + 1);
+        // truncated like the Size(w * scale, h * scale) that Preprocessor passes to OpenCV
+        int scaledWidth = Math.max((int) (cropWidth * scale), 1);
+        int scaledHeight = Math.max((int) (cropHeight * scale), 1);
+
+        int top = (size - scaledHeight + 1) / 2;
+        int left = (size - scaledWidth + 1) / 2;
+
+        Arrays.fill(out, 0, size * size, (byte) background);
+
+        // INTER_LINEAR with pixel centers aligned
+        float fx = cropWidth * 1.0f / scaledWidth;
+        float fy = cropHeight * 1.0f / scaledHeight;
+        for (int dy = 0; dy < scaledHeight; ++dy) {
+            float sy = Math.max((dy + 0.5f) * fy - 0.5f, 0);
+            int iy = Math.min((int) sy, cropHeight - 1);
+            int iy1 = Math.min(iy + 1, cropHeight - 1);
+            float wy = sy - iy;
+
+            for (int dx = 0; dx < scaledWidth; ++dx) {
+                float sx = Math.max((dx + 0.5f) * fx - 0.5f, 0);
+                int ix = Math.min((int) sx, cropWidth - 1);
+                int ix1 = Math.min(ix + 1, cropWidth - 1);
+                float wx = sx - ix;
+
+                int r0 = (y1 + iy) * width + x1;
+                int r1 = (y1 + iy1) * width + x1;
+                float v = (1 - wy) * ((1 - wx) * (gray[r0 + ix] & 0xff) + wx * (gray[r0 + ix1] & 0xff))
+                        + wy * ((1 - wx) * (gray[r1 + ix] & 0xff) + wx * (gray[r1 + ix1] & 0xff));
+
+                int oy = top + dy;
+                int ox = left + dx;
+                if (oy >= 0 && oy < size && ox >= 0 && ox < size) {
+                    out[oy * size + ox] = (byte) (v + 0.5f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bilinear resize of a whole canvasWidth x canvasHeight canvas to size x size, like
+     * Preprocessor.resize() (INTER_LINEAR with pixel centers aligned), when only the region
+     * at (left, top) of the canvas is given; the rest of the canvas is background.
+     * Results match OpenCV up to the rounding of its fixed point resize.
+     * @param gray the region's pixels row by row, width * height values
+     * @param out size * size gray pixels
+     */
+    public static void resizeCanvas(byte[] gray, int left, int top, int width, int height,
+                                    int canvasWidth, int canvasHeight, int background, int size, byte[] out) {
+        float fx = canvasWidth * 1.0f / size;
+        float fy = canvasHeight * 1.0f / size;
+        for (int dy = 0; dy < size; ++dy) {
+            float sy = Math.max((dy + 0.5f) * fy - 0.5f, 0);
+            int iy = Math.min((int) sy, canvasHeight - 1);
+            int iy1 = Math.min(iy + 1, canvasHeight - 1);
+            float wy = sy - iy;
+
+            for (int dx = 0; dx < size; ++dx) {
+                float sx = Math.max((dx + 0.5f) * fx - 0.5f, 0);
+                int ix = Math.min((int) sx, canvasWidth - 1);
+                int ix1 = Math.min(ix + 1, canvasWidth - 1);
+                float wx = sx - ix;
+
+                float v = (1 - wy) * ((1 - wx) * regionPixel(gray, left, top, width, height, ix, iy, background)
+                                + wx * regionPixel(gray, left, top, width, height, ix1, iy, background))
+                        + wy * ((1 - wx) * regionPixel(gray, left, top, width, height, ix, iy1, background)
+                                + wx * regionPixel(gray, left, top, width, height, ix1, iy1, background));
+                out[dy * size + dx] = (byte) (v + 0.5f);
+            }
+        }
+    }
+
+    // canvas pixel (x, y), background outside the region
+    private static int regionPixel(byte[] gray, int left, int top, int width, int height,
+                                   int x, int y, int background) {
+        x -= left;
+        y -= top;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return background;
+        }
+        return gray[y * width + x] & 0xff;
+    }
+
+    /**
+     * Model input like Preprocessor.getPixels: 0 for white and 1 for black pixels.
+     * @param length number of pixels of gray
+     * @param offset index of the first pixel in pixelsOut
+     */
+    public static void normalize(byte[] gray, int length, float[] pixelsOut, int offset) {
+        for (int i = 0; i < length; ++i) {
+            pixelsOut[offset + i] = (0xff - (gray[i] & 0xff)) / 255.0f;
+        }
+    }
+}
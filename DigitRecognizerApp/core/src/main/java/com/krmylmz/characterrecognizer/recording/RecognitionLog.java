@@ -0,0 +1,356 @@
+package com.krmylmz.characterrecognizer.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of recognitions for offline analysis: the model input as bytes, the
+ * class probabilities, the chosen label, a model id and per stage latencies, as fixed
+ * size records in memory mapped segment files of SEGMENT_RECORDS records each.
+ * Opening a log resumes the newest segment if it has room. When a new segment is
+ * started, the oldest segments are deleted so at most maxSegments are kept.
+ *
+ * A writer claims its record with one AtomicLong increment and fills it with absolute
+ * puts into the mapped segment, so writers never lock or allocate except when a new
+ * segment is mapped. The record's commit marker is written last; a reader skips records
+ * without it (unfinished or after a crash). Records are little-endian:
+ *
+ *   long  timestamp, System.currentTimeMillis()
+ *   int   model id
+ *   int   label, -1 for none
+ *   float probabilities[NUM_CLASSES]
+ *   long  stage latencies in nanoseconds[MAX_STAGES], unused stages are 0
+ *   byte  input[INPUT_SIZE], 0 for background and 255 for ink
+ *   int   commit marker, RECORD_MAGIC
+ */
+public class RecognitionLog implements Closeable {
+
+    public static final int INPUT_SIZE = 28 * 28;
+    public static final int NUM_CLASSES = 10;
+    public static final int MAX_STAGES = 4;
+
+    public static final int SEGMENT_RECORDS = 4096;
+
+    // about 14.6 MB with SEGMENT_RECORDS records of RECORD_SIZE bytes
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+    private static final int RECORD_MAGIC = 0x52454331; // "REC1"
+
+    private static final int TIMESTAMP = 0;
+    private static final int MODEL_ID = TIMESTAMP + 8;
+    private static final int LABEL = MODEL_ID + 4;
+    private static final int PROBABILITIES = LABEL + 4;
+    private static final int STAGES = PROBABILITIES + NUM_CLASSES * 4;
+    private static final int INPUT = STAGES + MAX_STAGES * 8;
+    private static final int COMMIT = INPUT + INPUT_SIZE;
+    public static final int RECORD_SIZE = COMMIT + 4;
+
+    private static final long SEGMENT_SIZE = (long) SEGMENT_RECORDS * RECORD_SIZE;
+    private static final String SEGMENT_SUFFIX = ".rlog";
+
+    private static class Segment {
+        final long index;
+        final MappedByteBuffer buffer;
+
+        Segment(long index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+
+    private final File dir;
+    private final int maxSegments;
+    private final AtomicLong nextRecord;
+    private volatile Segment current;
+
+    /**
+     * Opens the log in dir keeping at most DEFAULT_MAX_SEGMENTS segments.
+     */
+    public RecognitionLog(File dir) throws IOException {
+        this(dir, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Opens the log in dir. New records go after the last committed record of the newest
+     * segment, or to a new segment if it is full.
+     * @param maxSegments segments kept, older ones are deleted when a new one is started
+     */
+    public RecognitionLog(File dir, int maxSegments) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        this.dir = dir;
+        this.maxSegments = Math.max(maxSegments, 1);
+
+        File[] segments = listSegments(dir);
+        long record = 0;
+        if (segments.length > 0) {
+            long last = segmentIndex(segments[segments.length - 1]);
+            Segment segment = map(last);
+            int used = usedRecords(segment.buffer);
+            if (used < SEGMENT_RECORDS) {
+                current = segment;
+            }
+            record = last * SEGMENT_RECORDS + used;
+        }
+        nextRecord = new AtomicLong(record);
+        if (current == null) {
+            current = map(record / SEGMENT_RECORDS);
+        }
+        deleteOldSegments(current.index);
+    }
+
+    // records up to and including the last committed one, later ones were never written
+    private static int usedRecords(MappedByteBuffer buffer) {
+        for (int i = SEGMENT_RECORDS - 1; i >= 0; --i) {
+            if (buffer.getInt(i * RECORD_SIZE + COMMIT) == RECORD_MAGIC) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // deletes the segments older than the maxSegments newest ones up to newest
+    private void deleteOldSegments(long newest) {
+        for (File segment : listSegments(dir)) {
+            if (segmentIndex(segment) <= newest - maxSegments) {
+                // a late writer or a reader keeps its mapping of a deleted file
+                segment.delete();
+            }
+        }
+    }
+
+    /**
+     * Appends one recognition, safe to call from any thread.
+     * @param input model input, 0 for background and 1 for ink, INPUT_SIZE values
+     * @param probabilities NUM_CLASSES values are logged, may be null
+     * @param label chosen label, -1 for none
+     * @param modelId caller defined model id
+     * @param stageNanos up to MAX_STAGES stage latencies, may be null
+     */
+    public void append(float[] input, float[] probabilities, int label, int modelId, long[] stageNanos) throws IOException {
+        long record = nextRecord.getAndIncrement();
+        MappedByteBuffer buffer = segmentOf(record);
+        int base = (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+
+        buffer.putLong(base + TIMESTAMP, System.currentTimeMillis());
+        buffer.putInt(base + MODEL_ID, modelId);
+        buffer.putInt(base + LABEL, label);
+        for (int i = 0; i < NUM_CLASSES; ++i) {
+            buffer.putFloat(base + PROBABILITIES + i * 4,
+                    (probabilities != null && i < probabilities.length) ? probabilities[i] : 0);
+        }
+        for (int i = 0; i < MAX_STAGES; ++i) {
+            buffer.putLong(base + STAGES + i * 8,
+                    (stageNanos != null && i < stageNanos.length) ? stageNanos[i] : 0);
+        }
+        for (int i = 0; i < INPUT_SIZE; ++i) {
+            float v = Math.max(0, Math.min(1, input[i]));
+            buffer.put(base + INPUT + i, (byte) (v * 255 + 0.5f));
+        }
+        buffer.putInt(base + COMMIT, RECORD_MAGIC);
+    }
+
+    private MappedByteBuffer segmentOf(long record) throws IOException {
+        long index = record / SEGMENT_RECORDS;
+        Segment segment = current;
+        if (segment.index == index) {
+            return segment.buffer;
+        }
+
+        synchronized (this) {
+            segment = current;
+            if (segment.index == index) {
+                return segment.buffer;
+            }
+            Segment mapped = map(index);
+            // a late writer of an older segment must not roll the log back
+            if (index > segment.index) {
+                current = mapped;
+                deleteOldSegments(index);
+            }
+            return mapped.buffer;
+        }
+    }
+
+    private Segment map(long index) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(dir, index), "rw");
+        try {
+            file.setLength(SEGMENT_SIZE);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(index, buffer);
+        } finally {
+            // the mapping stays valid
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the current segment to storage. Older segments are written by the OS.
+     */
+    @Override
+    public void close() {
+        current.buffer.force();
+    }
+
+    private static File segmentFile(File dir, long index) {
+        return new File(dir, String.format(Locale.ENGLISH, "%08d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentIndex(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static File[] listSegments(File dir) {
+        File[] segments = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        // zero padded names sort by index
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * One record of the log, a view into the mapped segment, nothing is copied.
+     * Valid until the iterator moves on.
+     */
+    public static class Record {
+        private MappedByteBuffer buffer;
+        private int base;
+
+        public long getTimestamp() {
+            return buffer.getLong(base + TIMESTAMP);
+        }
+
+        public int getModelId() {
+            return buffer.getInt(base + MODEL_ID);
+        }
+
+        public int getLabel() {
+            return buffer.getInt(base + LABEL);
+        }
+
+        public float getProbability(int label) {
+            return buffer.getFloat(base + PROBABILITIES + label * 4);
+        }
+
+        public long getStageNanos(int stage) {
+            return buffer.getLong(base + STAGES + stage * 8);
+        }
+
+        /**
+         * @return input pixel in range (0, 255), 255 for ink
+         */
+        public int getInput(int pixel) {
+            return buffer.get(base + INPUT + pixel) & 0xff;
+        }
+
+        /**
+         * @param pixelsOut INPUT_SIZE values, 0 for background and 1 for ink
+         */
+        public void getInput(float[] pixelsOut) {
+            for (int i = 0; i < INPUT_SIZE; ++i) {
+                pixelsOut[i] = (buffer.get(base + INPUT + i) & 0xff) / 255.0f;
+            }
+        }
+    }
+
+    /**
+     * Iterates the committed records of every segment in dir, oldest first, mapping the
+     * segments read only. The same Record instance is returned by every next().
+     */
+    public static Iterable<Record> read(final File dir) {
+        return new Iterable<Record>() {
+            @Override
+            public Iterator<Record> iterator() {
+                return new RecordIterator(listSegments(dir));
+            }
+        };
+    }
+
+    private static class RecordIterator implements Iterator<Record> {
+        private final File[] segments;
+        private int segment = -1;
+        private MappedByteBuffer buffer;
+        private int next = SEGMENT_RECORDS;
+        private boolean found = false;
+        private final Record record = new Record();
+
+        RecordIterator(File[] segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!found) {
+                if (next >= SEGMENT_RECORDS) {
+                    if (++segment >= segments.length) {
+                        return false;
+                    }
+                    buffer = mapReadOnly(segments[segment]);
+                    next = (buffer != null) ? 0 : SEGMENT_RECORDS;
+                    continue;
+                }
+                int base = next++ * RECORD_SIZE;
+                if (buffer.capacity() >= base + RECORD_SIZE && buffer.getInt(base + COMMIT) == RECORD_MAGIC) {
+                    record.buffer = buffer;
+                    record.base = base;
+                    found = true;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            found = false;
+            return record;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        // null if the segment was deleted by the writer's retention meanwhile
+        private static MappedByteBuffer mapReadOnly(File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                    buffer.order(ByteOrder.LITTLE_ENDIAN);
+                    return buffer;
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Can not read " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.krmylmz.characterrecognizer.tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of nanosecond latencies with log-linear buckets: every power of two
+ * is split into SUB_BUCKETS equal buckets, so the relative error is below 1/SUB_BUCKETS
+ * from 1ns up to MAX_NANOS. Recording is a few arithmetic ops and atomic increments,
+ * it never allocates or blocks, so it can be called from any thread on the hot path.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // highest bit of the largest tracked value, about 68 seconds
+    private static final int MAX_BIT = 36;
+    public static final long MAX_NANOS = (1L << (MAX_BIT + 1)) - 1;
+
+    private static final int BUCKETS = (MAX_BIT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos latency, clamped to (0, MAX_NANOS)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_NANOS));
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised max, check again
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // smallest value of bucket
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() * 1.0 / n;
+    }
+
+    /**
+     * @param percentile in range (0, 100)
+     * @return upper bound of the bucket holding the percentile, 0 if empty.
+     * Concurrent records may or may not be included.
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            n += counts.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min((i + 1 < BUCKETS) ? lowerBound(i + 1) - 1 : MAX_NANOS, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every value. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
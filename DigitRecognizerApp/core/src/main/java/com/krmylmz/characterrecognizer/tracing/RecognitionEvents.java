@@ -0,0 +1,84 @@
+package com.krmylmz.characterrecognizer.tracing;
+
+/**
+ * Hook for profiler events around model load, preprocessing, batch formation and
+ * inference. The default does nothing and allocates nothing: begin() returns
+ * Span.NONE, whose methods are empty. On a JVM with Flight Recorder, installJfr()
+ * switches to JDK Flight Recorder events (the jfr module), which are only created
+ * while a recording has them enabled.
+ *
+ *      RecognitionEvents.Span span = RecognitionEvents.get().begin(RecognitionEvents.INFERENCE);
+ *      ...
+ *      span.model(name).batch(batchSize).dims(28, 28).end();
+ */
+public class RecognitionEvents {
+
+    public static final int MODEL_LOAD = 0;
+    public static final int PREPROCESS = 1;
+    public static final int BATCH = 2;
+    public static final int INFERENCE = 3;
+
+    private static final String JFR_EVENTS = "com.krmylmz.characterrecognizer.jfr.JfrRecognitionEvents";
+
+    private static volatile RecognitionEvents installed = new RecognitionEvents();
+
+    /**
+     * One timed event, details are set before end().
+     */
+    public static class Span {
+        public static final Span NONE = new Span();
+
+        public Span model(String name) {
+            return this;
+        }
+
+        public Span stage(String name) {
+            return this;
+        }
+
+        public Span batch(int size) {
+            return this;
+        }
+
+        public Span dims(int width, int height) {
+            return this;
+        }
+
+        public void end() {
+        }
+    }
+
+    public static RecognitionEvents get() {
+        return installed;
+    }
+
+    public static void install(RecognitionEvents events) {
+        installed = events;
+    }
+
+    /**
+     * Installs the Flight Recorder events if the jfr module is on the classpath and
+     * the JVM has jdk.jfr.
+     * @return true if installed
+     */
+    public static boolean installJfr() {
+        try {
+            install((RecognitionEvents) Class.forName(JFR_EVENTS).getDeclaredConstructor().newInstance());
+            return true;
+        } catch (Exception e) {
+            // no jfr module, or it can not be instantiated
+            return false;
+        } catch (LinkageError e) {
+            // no jdk.jfr
+            return false;
+        }
+    }
+
+    /**
+     * @param kind MODEL_LOAD, PREPROCESS, BATCH or INFERENCE
+     * @return span to end when the work is done
+     */
+    public Span begin(int kind) {
+        return Span.NONE;
+    }
+}
@@ -0,0 +1,111 @@
+package com.krmylmz.characterrecognizer.tracing;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Latency histograms of the detect pipeline, one per stage. A stage is timed with
+ *
+ *      long start = tracer.start();
+ *      ...
+ *      tracer.end(StageTracer.BOUNDS, start);
+ *
+ * which only reads the clock and records into a LatencyHistogram, no allocation.
+ * The histograms can be read at any time and dumped as text on demand.
+ */
+public class StageTracer {
+
+    public static final int SNAPSHOT = 0;
+    public static final int BITMAP_TO_MAT = 1;
+    public static final int BOUNDS = 2;
+    public static final int SCALE = 3;
+    public static final int PAD = 4;
+    public static final int PIXELS = 5;
+    public static final int FORMAT = 6;
+    // inference of classifier i is stage INFERENCE + i
+    public static final int INFERENCE = 7;
+
+    public static final int MAX_CLASSIFIERS = 4;
+
+    private static final String[] NAMES = {
+            "snapshot", "bitmap->mat", "bounds", "scale", "pad", "pixels", "format"
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[INFERENCE + MAX_CLASSIFIERS];
+
+    public StageTracer() {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return start time to pass to end
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since start for stage.
+     * @return now, to start the next stage with
+     */
+    public long end(int stage, long start) {
+        long now = System.nanoTime();
+        if (stage >= 0 && stage < histograms.length) {
+            histograms[stage].record(now - start);
+        }
+        return now;
+    }
+
+    /**
+     * @param classifierIndex index of the classifier, stages of MAX_CLASSIFIERS or more are dropped
+     */
+    public static int inference(int classifierIndex) {
+        return INFERENCE + classifierIndex;
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return stage < INFERENCE ? NAMES[stage] : "inference[" + (stage - INFERENCE) + "]";
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes one line per stage that has values: count, mean, p50, p99 and max in us.
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append("stage          count     mean      p50      p99      max (us)\n");
+        for (int stage = 0; stage < histograms.length; ++stage) {
+            LatencyHistogram h = histograms[stage];
+            if (h.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.ENGLISH, "%-12s %7d %8.1f %8.1f %8.1f %8.1f\n",
+                    getStageName(stage), h.getCount(), h.getMeanNanos() / 1e3,
+                    h.getPercentileNanos(50) / 1e3, h.getPercentileNanos(99) / 1e3,
+                    h.getMaxNanos() / 1e3));
+        }
+    }
+
+    /**
+     * @return dump as a String
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            dump(builder);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package com.krmylmz.characterrecognizer;
+
+import com.krmylmz.characterrecognizer.drawing.StrokeRasterizer;
+import com.krmylmz.characterrecognizer.drawing.StrokeStore;
+import com.krmylmz.characterrecognizer.fixtures.Fixtures;
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.ConvNet;
+import com.krmylmz.characterrecognizer.models.ConvNetClassifier;
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+import com.krmylmz.characterrecognizer.recording.RecognitionLog;
+import com.krmylmz.characterrecognizer.tracing.LatencyHistogram;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated per call of the recognition hot path, measured after warm-up with
+ * com.sun.management.ThreadMXBean.getThreadAllocatedBytes and compared with a budget,
+ * so allocations that creep back in fail ./gradlew :core:test.
+ * Skipped on JVMs that can't count allocations per thread.
+ */
+public class AllocationBudgetTest {
+
+    private static final int PIXEL_WIDTH = Fixtures.PIXEL_WIDTH;
+    private static final int DRAWING_WIDTH = Fixtures.DRAWING_WIDTH;
+    private static final int CANVAS_WIDTH = Fixtures.CANVAS_WIDTH;
+    private static final float STROKE_WIDTH = Fixtures.STROKE_WIDTH;
+    private static final int NUM_CLASSES = 10;
+
+    // calls of the slow and the fast operations
+    private static final int SLOW = 500;
+    private static final int FAST = 20000;
+
+    // slack for the measurement itself, in bytes per run, not per call
+    private static final long MEASUREMENT_SLACK = 1024;
+
+    // Classification header, conf and label reference, with and without compressed oops
+    private static final int CLASSIFICATION_BYTES = 32;
+
+    private static final int FIXTURES = 8;
+    private static final int BATCH = 8;
+
+    private interface Operation {
+        void run(int i) throws Exception;
+    }
+
+    private static com.sun.management.ThreadMXBean bean;
+
+    private static StrokeStore[] strokes;
+    private static byte[][] canvases;
+    private static float[][] inputs;
+    private static float[][] scores;
+    private static byte[] weights;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+        bean = (com.sun.management.ThreadMXBean) threads;
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        strokes = Fixtures.strokeSets(FIXTURES);
+        canvases = Fixtures.grayCanvases(FIXTURES);
+        inputs = Fixtures.modelInputs(FIXTURES);
+        scores = Fixtures.scores(FIXTURES, NUM_CLASSES);
+        weights = Fixtures.smallConvNetWeights();
+    }
+
+    @Test
+    public void strokeRasterizerDoesNotAllocate() throws Exception {
+        final StrokeRasterizer rasterizer = new StrokeRasterizer(CANVAS_WIDTH, CANVAS_WIDTH);
+        final float[] pixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+        assertBudget("StrokeRasterizer.rasterize", 0, SLOW, new Operation() {
+            @Override
+            public void run(int i) {
+                rasterizer.rasterize(strokes[i % FIXTURES], STROKE_WIDTH, pixels, 0);
+            }
+        });
+    }
+
+    @Test
+    public void pixelPreprocessorDoesNotAllocate() throws Exception {
+        final PixelPreprocessor preprocessor = new PixelPreprocessor(PIXEL_WIDTH);
+        final float[] pixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+        assertBudget("PixelPreprocessor.toPixels", 0, SLOW, new Operation() {
+            @Override
+            public void run(int i) {
+                preprocessor.toPixels(canvases[i % FIXTURES], CANVAS_WIDTH, CANVAS_WIDTH, 0xff,
+                        DRAWING_WIDTH, pixels, 0);
+            }
+        });
+    }
+
+    @Test
+    public void convNetDoesNotAllocate() throws Exception {
+        final ConvNet net = ConvNet.load(new ByteArrayInputStream(weights));
+        assertBudget("ConvNet.run", 0, SLOW, new Operation() {
+            @Override
+            public void run(int i) {
+                net.run(inputs[i % FIXTURES], PIXEL_WIDTH, PIXEL_WIDTH);
+            }
+        });
+    }
+
+    @Test
+    public void recognizeAllocatesOnlyTheResult() throws Exception {
+        final ConvNetClassifier classifier = ConvNetClassifier.create("test", new ByteArrayInputStream(weights));
+        assertBudget("ConvNetClassifier.recognize", CLASSIFICATION_BYTES, SLOW, new Operation() {
+            @Override
+            public void run(int i) {
+                classifier.recognize(inputs[i % FIXTURES]);
+            }
+        });
+    }
+
+    @Test
+    public void recognizeBatchAllocatesOnlyTheResults() throws Exception {
+        final ConvNetClassifier classifier = ConvNetClassifier.create("test", new ByteArrayInputStream(weights));
+        final float[] batch = new float[BATCH * PIXEL_WIDTH * PIXEL_WIDTH];
+        for (int b = 0; b < BATCH; ++b) {
+            System.arraycopy(inputs[b % FIXTURES], 0, batch, b * PIXEL_WIDTH * PIXEL_WIDTH, PIXEL_WIDTH * PIXEL_WIDTH);
+        }
+        // the array (header and references) and one Classification per image
+        double budget = 16 + BATCH * 8 + BATCH * CLASSIFICATION_BYTES;
+        assertBudget("ConvNetClassifier.recognizeBatch", budget, SLOW / BATCH, new Operation() {
+            @Override
+            public void run(int i) {
+                classifier.recognizeBatch(batch, BATCH);
+            }
+        });
+    }
+
+    @Test
+    public void selectAllocatesOnlyTheResult() throws Exception {
+        assertBudget("Classification.select", CLASSIFICATION_BYTES, FAST, new Operation() {
+            @Override
+            public void run(int i) {
+                Classification.select(scores[i % FIXTURES], 0, NUM_CLASSES, 0.1f);
+            }
+        });
+    }
+
+    @Test
+    public void latencyHistogramDoesNotAllocate() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertBudget("LatencyHistogram.record", 0, FAST, new Operation() {
+            @Override
+            public void run(int i) {
+                histogram.record(i * 1000L);
+            }
+        });
+    }
+
+    @Test
+    public void recognitionLogAppendStaysInBudget() throws Exception {
+        File dir = File.createTempFile("recognition-log", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        final RecognitionLog log = new RecognitionLog(dir);
+        final long[] stages = new long[2];
+        try {
+            // one segment mapping per SEGMENT_RECORDS records is part of the budget
+            assertBudget("RecognitionLog.append", 64, FAST, new Operation() {
+                @Override
+                public void run(int i) throws IOException {
+                    log.append(inputs[i % FIXTURES], scores[i % FIXTURES], 1, 0, stages);
+                }
+            });
+        } finally {
+            log.close();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Runs op iterations times to warm up, then iterations times measured.
+     * @param budget allowed bytes per call
+     */
+    private static void assertBudget(String name, double budget, int iterations, Operation op) throws Exception {
+        for (int i = 0; i < iterations; ++i) {
+            op.run(i);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; ++i) {
+            op.run(i);
+        }
+        long allocated = bean.getThreadAllocatedBytes(thread) - before;
+
+        double perCall = Math.max(0, allocated - MEASUREMENT_SLACK) * 1.0 / iterations;
+        assertTrue(String.format(Locale.ENGLISH, "%s allocates %.1f B/call, budget %.1f", name, perCall, budget),
+                perCall <= budget);
+    }
+}
@@ -0,0 +1,256 @@
+package com.krmylmz.characterrecognizer.fixtures;
+
+import com.krmylmz.characterrecognizer.drawing.StrokePainter;
+import com.krmylmz.characterrecognizer.drawing.StrokeRasterizer;
+import com.krmylmz.characterrecognizer.drawing.StrokeStore;
+import com.krmylmz.characterrecognizer.models.ConvNet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Seeded inputs shared by the core unit tests and the benchmarks. Model inputs come from an MNIST IDX image file when the
+ * mnist.images system property points to one, otherwise from synthetic digit-like
+ * strokes. Canvas inputs are synthetic strokes drawn at phone canvas resolution.
+ * Everything is seeded, so every run sees the same data.
+ */
+public final class Fixtures {
+
+    // MNIST dataset property
+    public static final int PIXEL_WIDTH = 28;
+    public static final int DRAWING_WIDTH = 20;
+
+    // DrawView canvas of a 1080px wide phone and its stroke width (DrawPath)
+    public static final int CANVAS_WIDTH = 1080;
+    public static final float STROKE_WIDTH = 60;
+
+    private static final int IDX_IMAGES_MAGIC = 2051;
+    private static final long SEED = 1608;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return count model inputs of PIXEL_WIDTH x PIXEL_WIDTH, 0 for background and 1 for ink
+     */
+    public static float[][] modelInputs(int count) throws IOException {
+        String path = System.getProperty("mnist.images");
+        if (path != null && new File(path).isFile()) {
+            return readIdx(new File(path), count);
+        }
+
+        Random random = new Random(SEED);
+        StrokeRasterizer rasterizer = new StrokeRasterizer(CANVAS_WIDTH, CANVAS_WIDTH);
+        float[][] inputs = new float[count][PIXEL_WIDTH * PIXEL_WIDTH];
+        for (int i = 0; i < count; ++i) {
+            rasterizer.rasterize(strokes(random), STROKE_WIDTH, inputs[i], 0);
+        }
+        return inputs;
+    }
+
+    /**
+     * @return count canvases of CANVAS_WIDTH x CANVAS_WIDTH ARGB pixels, black strokes on
+     * white, like DrawView's ARGB_8888 bitmap
+     */
+    public static int[][] argbCanvases(int count) {
+        Random random = new Random(SEED);
+        int[][] canvases = new int[count][];
+        for (int i = 0; i < count; ++i) {
+            byte[] gray = grayCanvas(strokes(random));
+            int[] argb = new int[gray.length];
+            for (int p = 0; p < gray.length; ++p) {
+                int v = gray[p] & 0xff;
+                argb[p] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+            canvases[i] = argb;
+        }
+        return canvases;
+    }
+
+    /**
+     * @return count canvases of CANVAS_WIDTH x CANVAS_WIDTH gray bytes, black strokes on white
+     */
+    public static byte[][] grayCanvases(int count) {
+        Random random = new Random(SEED);
+        byte[][] canvases = new byte[count][];
+        for (int i = 0; i < count; ++i) {
+            canvases[i] = grayCanvas(strokes(random));
+        }
+        return canvases;
+    }
+
+    /**
+     * @return count random stroke sets
+     */
+    public static StrokeStore[] strokeSets(int count) {
+        Random random = new Random(SEED);
+        StrokeStore[] sets = new StrokeStore[count];
+        for (int i = 0; i < count; ++i) {
+            sets[i] = strokes(random);
+        }
+        return sets;
+    }
+
+    /**
+     * @return count softmax outputs, peaked on a random class like a confident model
+     */
+    public static float[][] scores(int count, int numClasses) {
+        Random random = new Random(SEED);
+        float[][] scores = new float[count][numClasses];
+        for (float[] s : scores) {
+            float sum = 0;
+            int peak = random.nextInt(numClasses);
+            for (int c = 0; c < numClasses; ++c) {
+                s[c] = (float) Math.exp(random.nextGaussian() + (c == peak ? 6 : 0));
+                sum += s[c];
+            }
+            for (int c = 0; c < numClasses; ++c) {
+                s[c] /= sum;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Random weights with the layer shapes of the app's MNIST model: conv 3x3x32, conv
+     * 3x3x64, max pool 2, dense 128, dense 10 softmax. Timing does not depend on the values.
+     */
+    public static ConvNet mnistConvNet() throws IOException {
+        return ConvNet.load(new ByteArrayInputStream(mnistConvNetWeights()));
+    }
+
+    /**
+     * @return the weights of mnistConvNet in the ConvNet file format
+     */
+    public static byte[] mnistConvNetWeights() throws IOException {
+        Random random = new Random(SEED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(ConvNet.MAGIC);
+        out.writeInt(PIXEL_WIDTH);
+        out.writeInt(4);
+        writeConv(out, random, 3, 1, 32);
+        writeConv(out, random, 3, 32, 64);
+        out.writeInt(ConvNet.POOL);
+        out.writeInt(2);
+        writeDense(out, random, 12 * 12 * 64, 128, ConvNet.ACTIVATION_RELU);
+        writeDense(out, random, 128, 10, ConvNet.ACTIVATION_SOFTMAX);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Random weights of a small net with the layer kinds of the app's model, for tests
+     * that run it many times: conv 5x5x8, max pool 2, dense 10 softmax.
+     */
+    public static byte[] smallConvNetWeights() throws IOException {
+        Random random = new Random(SEED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(ConvNet.MAGIC);
+        out.writeInt(PIXEL_WIDTH);
+        out.writeInt(3);
+        writeConv(out, random, 5, 1, 8);
+        out.writeInt(ConvNet.POOL);
+        out.writeInt(2);
+        writeDense(out, random, 12 * 12 * 8, 10, ConvNet.ACTIVATION_SOFTMAX);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeConv(DataOutputStream out, Random random, int k, int in, int outChannels) throws IOException {
+        out.writeInt(ConvNet.CONV);
+        out.writeInt(k);
+        out.writeInt(in);
+        out.writeInt(outChannels);
+        out.writeInt(ConvNet.ACTIVATION_RELU);
+        writeRandom(out, random, k * k * in * outChannels + outChannels, Math.sqrt(2.0 / (k * k * in)));
+    }
+
+    private static void writeDense(DataOutputStream out, Random random, int in, int outUnits, int activation) throws IOException {
+        out.writeInt(ConvNet.DENSE);
+        out.writeInt(in);
+        out.writeInt(outUnits);
+        out.writeInt(activation);
+        writeRandom(out, random, in * outUnits + outUnits, Math.sqrt(2.0 / in));
+    }
+
+    private static void writeRandom(DataOutputStream out, Random random, int count, double std) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            out.writeFloat((float) (random.nextGaussian() * std));
+        }
+    }
+
+    // a digit sized random walk of one or two strokes somewhere on the canvas
+    private static StrokeStore strokes(Random random) {
+        StrokeStore store = new StrokeStore();
+        float size = CANVAS_WIDTH * (0.3f + 0.4f * random.nextFloat());
+        float left = random.nextFloat() * (CANVAS_WIDTH - size);
+        float top = random.nextFloat() * (CANVAS_WIDTH - size);
+
+        int strokeCount = 1 + random.nextInt(2);
+        float t = 0;
+        for (int s = 0; s < strokeCount; ++s) {
+            float x = left + random.nextFloat() * size;
+            float y = top + random.nextFloat() * size;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            store.beginStroke(x, y, t);
+            for (int p = 0; p < 40; ++p) {
+                angle += random.nextGaussian() * 0.3;
+                x = clamp(x + (float) Math.cos(angle) * size / 20, left, left + size);
+                y = clamp(y + (float) Math.sin(angle) * size / 20, top, top + size);
+                t += 8;
+                store.addPoint(x, y, t);
+            }
+        }
+        return store;
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    // strokes as DrawView paints them, black on white, see StrokePainter
+    private static byte[] grayCanvas(StrokeStore strokes) {
+        byte[] gray = new byte[CANVAS_WIDTH * CANVAS_WIDTH];
+        StrokePainter.paint(strokes, STROKE_WIDTH, gray, 0, 0, CANVAS_WIDTH, CANVAS_WIDTH);
+        return gray;
+    }
+
+    // IDX3 unsigned byte images, white digit on black like MNIST itself
+    private static float[][] readIdx(File file, int count) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != IDX_IMAGES_MAGIC) {
+                throw new IOException("Not an IDX image file: " + file);
+            }
+            int images = in.readInt();
+            int rows = in.readInt();
+            int cols = in.readInt();
+            if (rows != PIXEL_WIDTH || cols != PIXEL_WIDTH) {
+                throw new IOException("Expected 28x28 images: " + file);
+            }
+
+            float[][] inputs = new float[Math.min(count, images)][rows * cols];
+            byte[] image = new byte[rows * cols];
+            for (float[] input : inputs) {
+                in.readFully(image);
+                for (int p = 0; p < image.length; ++p) {
+                    input[p] = (image[p] & 0xff) / 255.0f;
+                }
+            }
+            return inputs;
+        } finally {
+            in.close();
+        }
+    }
+}
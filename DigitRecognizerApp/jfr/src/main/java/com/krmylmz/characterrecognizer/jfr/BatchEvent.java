@@ -0,0 +1,11 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.krmylmz.characterrecognizer.Batch")
+@Label("Batch Formation")
+@Description("Collecting the inputs of one classifier batch")
+class BatchEvent extends RecognitionEvent {
+}
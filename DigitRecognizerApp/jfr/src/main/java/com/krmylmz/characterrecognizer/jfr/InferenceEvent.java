@@ -0,0 +1,11 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.krmylmz.characterrecognizer.Inference")
+@Label("Inference")
+@Description("One classifier call on a batch")
+class InferenceEvent extends RecognitionEvent {
+}
@@ -0,0 +1,83 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import com.krmylmz.characterrecognizer.tracing.RecognitionEvents;
+
+import jdk.jfr.EventType;
+
+/**
+ * RecognitionEvents as JDK Flight Recorder events in the "Digit Recognizer" category.
+ * Installed by RecognitionEvents.installJfr() when this module is on the classpath.
+ *
+ * An event object is only created while a recording has its type enabled, otherwise
+ * begin() returns Span.NONE, so with JFR off the hooks stay an enabled check each.
+ * The events are enabled by the default and profile settings of JDK 11 and later.
+ */
+public class JfrRecognitionEvents extends RecognitionEvents {
+
+    // indexed by the RecognitionEvents kinds
+    private final EventType[] types = {
+            EventType.getEventType(ModelLoadEvent.class),
+            EventType.getEventType(PreprocessEvent.class),
+            EventType.getEventType(BatchEvent.class),
+            EventType.getEventType(InferenceEvent.class)
+    };
+
+    private static class JfrSpan extends Span {
+        private final RecognitionEvent event;
+
+        JfrSpan(RecognitionEvent event) {
+            this.event = event;
+            event.begin();
+        }
+
+        @Override
+        public Span model(String name) {
+            event.model = name;
+            return this;
+        }
+
+        @Override
+        public Span stage(String name) {
+            event.stage = name;
+            return this;
+        }
+
+        @Override
+        public Span batch(int size) {
+            event.batchSize = size;
+            return this;
+        }
+
+        @Override
+        public Span dims(int width, int height) {
+            event.inputWidth = width;
+            event.inputHeight = height;
+            return this;
+        }
+
+        @Override
+        public void end() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public Span begin(int kind) {
+        if (!types[kind].isEnabled()) {
+            return Span.NONE;
+        }
+        switch (kind) {
+            case MODEL_LOAD:
+                return new JfrSpan(new ModelLoadEvent());
+            case PREPROCESS:
+                return new JfrSpan(new PreprocessEvent());
+            case BATCH:
+                return new JfrSpan(new BatchEvent());
+            default:
+                return new JfrSpan(new InferenceEvent());
+        }
+    }
+}
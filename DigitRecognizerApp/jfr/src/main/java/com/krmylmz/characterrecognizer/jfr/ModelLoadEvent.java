@@ -0,0 +1,11 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.krmylmz.characterrecognizer.ModelLoad")
+@Label("Model Load")
+@Description("Loading the weights of a classifier")
+class ModelLoadEvent extends RecognitionEvent {
+}
@@ -0,0 +1,11 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.krmylmz.characterrecognizer.Preprocess")
+@Label("Preprocess")
+@Description("One preprocessing stage of an image or frame")
+class PreprocessEvent extends RecognitionEvent {
+}
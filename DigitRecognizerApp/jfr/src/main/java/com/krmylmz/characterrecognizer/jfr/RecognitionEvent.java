@@ -0,0 +1,29 @@
+package com.krmylmz.characterrecognizer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Fields shared by the recognizer events, unset ones stay empty or 0.
+ */
+@Category("Digit Recognizer")
+@StackTrace(false)
+abstract class RecognitionEvent extends Event {
+
+    @Label("Model")
+    String model;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Input Width")
+    int inputWidth;
+
+    @Label("Input Height")
+    int inputHeight;
+}
@@ -50,6 +50,16 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected boolean mEnabled;
     protected FpsMeter mFpsMeter = null;
 
+    /* Cached drawing geometry, recomputed only when canvas size, bitmap size or mScale change */
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mDstCanvasWidth = -1;
+    private int mDstCanvasHeight = -1;
+    private int mDstBitmapWidth = -1;
+    private int mDstBitmapHeight = -1;
+    private float mDstScale = -1;
+    private FrameMetricsListener mFrameMetricsListener = null;
+
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
     public static final int CAMERA_ID_FRONT = 98;
@@ -173,6 +183,19 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         private CvCameraViewListener mOldStyleListener;
     };
 
+    /**
+     * Receives per stage timings of every delivered frame. Called on the frame delivery
+     * thread, implementations should not block or allocate.
+     */
+    public interface FrameMetricsListener {
+        /**
+         * @param listenerNanos - time spent in the CvCameraViewListener2.onCameraFrame() callback
+         * @param convertNanos - time spent in Utils.matToBitmap()
+         * @param drawNanos - time spent locking, drawing and posting the canvas
+         */
+        public void onFrameMetrics(long listenerNanos, long convertNanos, long drawNanos);
+    };
+
     /**
      * This class interface is abstract representation of single frame from camera for onCameraFrame callback
      * Attention: Do not use objects, that represents this interface out of onCameraFrame callback!
@@ -255,6 +278,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * Sets the listener that receives per stage timings of delivered frames, null disables timing
+     * @param listener
+     */
+    public void setFrameMetricsListener(FrameMetricsListener listener) {
+        mFrameMetricsListener = listener;
+    }
+
     /**
      *
      * @param listener
@@ -387,6 +418,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
      */
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
+        FrameMetricsListener metrics = mFrameMetricsListener;
+        long start = (metrics != null) ? System.nanoTime() : 0;
 
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
@@ -394,6 +427,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             modified = frame.rgba();
         }
 
+        long listenerDone = (metrics != null) ? System.nanoTime() : 0;
+
         boolean bmpValid = true;
         if (modified != null) {
             try {
@@ -406,26 +441,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             }
         }
 
+        long convertDone = (metrics != null) ? System.nanoTime() : 0;
+
         if (bmpValid && mCacheBitmap != null) {
             Canvas canvas = getHolder().lockCanvas();
             if (canvas != null) {
                 canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
-                }
+                updateDrawRects(canvas.getWidth(), canvas.getHeight());
+                canvas.drawBitmap(mCacheBitmap, mSrcRect, mDstRect, null);
 
                 if (mFpsMeter != null) {
                     mFpsMeter.measure();
@@ -434,6 +457,45 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 getHolder().unlockCanvasAndPost(canvas);
             }
         }
+
+        if (metrics != null) {
+            metrics.onFrameMetrics(listenerDone - start, convertDone - listenerDone, System.nanoTime() - convertDone);
+        }
+    }
+
+    /**
+     * Recomputes mSrcRect and mDstRect only if the canvas size, the cache bitmap size or mScale changed
+     */
+    private void updateDrawRects(int canvasWidth, int canvasHeight) {
+        int bitmapWidth = mCacheBitmap.getWidth();
+        int bitmapHeight = mCacheBitmap.getHeight();
+
+        if (canvasWidth == mDstCanvasWidth && canvasHeight == mDstCanvasHeight
+                && bitmapWidth == mDstBitmapWidth && bitmapHeight == mDstBitmapHeight
+                && mScale == mDstScale)
+            return;
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "mStretch value: " + mScale);
+
+        mSrcRect.set(0, 0, bitmapWidth, bitmapHeight);
+        if (mScale != 0) {
+            mDstRect.set((int)((canvasWidth - mScale*bitmapWidth) / 2),
+                    (int)((canvasHeight - mScale*bitmapHeight) / 2),
+                    (int)((canvasWidth - mScale*bitmapWidth) / 2 + mScale*bitmapWidth),
+                    (int)((canvasHeight - mScale*bitmapHeight) / 2 + mScale*bitmapHeight));
+        } else {
+            mDstRect.set((canvasWidth - bitmapWidth) / 2,
+                    (canvasHeight - bitmapHeight) / 2,
+                    (canvasWidth - bitmapWidth) / 2 + bitmapWidth,
+                    (canvasHeight - bitmapHeight) / 2 + bitmapHeight);
+        }
+
+        mDstCanvasWidth = canvasWidth;
+        mDstCanvasHeight = canvasHeight;
+        mDstBitmapWidth = bitmapWidth;
+        mDstBitmapHeight = bitmapHeight;
+        mDstScale = mScale;
     }
 
     /**
@@ -1,6 +1,9 @@
 package org.opencv.android;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
@@ -26,17 +29,31 @@ import org.opencv.imgproc.Imgproc;
  * disconnectCamera - closes the camera and stops preview.
  * When frame is delivered via callback from Camera - it processed via OpenCV to be
  * converted to RGBA32 and then passed to the external callback for modifications if required.
+ * Frames are handed from the camera callback thread to the worker thread through a lock-free
+ * triple buffer, so the camera callback never blocks on a slow listener. Frames that are
+ * overwritten before the worker picks them up are counted as dropped.
  */
 public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallback {
 
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
 
+    private static final int FRAME_CHAIN_SIZE = 3;
+    private static final int FRAME_INDEX_MASK = 3;
+    private static final int FRAME_FRESH = 4;
+
     private byte mBuffer[];
     private Mat[] mFrameChain;
-    private int mChainIdx = 0;
-    private Thread mThread;
-    private boolean mStopThread;
+    private volatile Thread mThread;
+    private volatile boolean mStopThread;
+
+    /* Triple buffer: the camera thread owns mBackIdx, the worker owns mFrontIdx and
+     * the shared middle slot is swapped atomically. FRAME_FRESH marks an unread middle slot. */
+    private final AtomicInteger mMiddleIdx = new AtomicInteger();
+    private int mBackIdx;
+    private int mFrontIdx;
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mDeliveredFrames = new AtomicLong();
 
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
@@ -195,16 +212,18 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     mCamera.addCallbackBuffer(mBuffer);
                     mCamera.setPreviewCallbackWithBuffer(this);
 
-                    mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrameChain = new Mat[FRAME_CHAIN_SIZE];
+                    mCameraFrame = new JavaCameraFrame[FRAME_CHAIN_SIZE];
+                    for (int i = 0; i < FRAME_CHAIN_SIZE; i++) {
+                        mFrameChain[i] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                        mCameraFrame[i] = new JavaCameraFrame(mFrameChain[i], mFrameWidth, mFrameHeight);
+                    }
+                    mBackIdx = 0;
+                    mMiddleIdx.set(1);
+                    mFrontIdx = 2;
 
                     AllocateCache();
 
-                    mCameraFrame = new JavaCameraFrame[2];
-                    mCameraFrame[0] = new JavaCameraFrame(mFrameChain[0], mFrameWidth, mFrameHeight);
-                    mCameraFrame[1] = new JavaCameraFrame(mFrameChain[1], mFrameWidth, mFrameHeight);
-
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
                         mSurfaceTexture = new SurfaceTexture(MAGIC_TEXTURE_ID);
                         mCamera.setPreviewTexture(mSurfaceTexture);
@@ -236,17 +255,29 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
             }
             mCamera = null;
             if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
+                for (Mat frame : mFrameChain)
+                    frame.release();
             }
             if (mCameraFrame != null) {
-                mCameraFrame[0].release();
-                mCameraFrame[1].release();
+                for (JavaCameraFrame frame : mCameraFrame)
+                    frame.release();
             }
         }
     }
 
-    private boolean mCameraFrameReady = false;
+    /**
+     * @return number of camera frames that were overwritten before being delivered
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * @return number of camera frames delivered to the listener
+     */
+    public long getDeliveredFrameCount() {
+        return mDeliveredFrames.get();
+    }
 
     @Override
     protected boolean connectCamera(int width, int height) {
@@ -259,7 +290,8 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         if (!initializeCamera(width, height))
             return false;
 
-        mCameraFrameReady = false;
+        mDroppedFrames.set(0);
+        mDeliveredFrames.set(0);
 
         /* now we can start update thread */
         Log.d(TAG, "Starting processing thread");
@@ -279,12 +311,11 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         try {
             mStopThread = true;
             Log.d(TAG, "Notify thread");
-            synchronized (this) {
-                this.notify();
-            }
+            Thread thread = mThread;
+            LockSupport.unpark(thread);
             Log.d(TAG, "Waiting for thread");
-            if (mThread != null)
-                mThread.join();
+            if (thread != null)
+                thread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
@@ -293,19 +324,20 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         /* Now release camera */
         releaseCamera();
-
-        mCameraFrameReady = false;
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         if (BuildConfig.DEBUG)
             Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
-        synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
-        }
+        /* Fill the back slot and publish it as the fresh middle one, never blocks */
+        mFrameChain[mBackIdx].put(0, 0, frame);
+        int previous = mMiddleIdx.getAndSet(mBackIdx | FRAME_FRESH);
+        if ((previous & FRAME_FRESH) != 0)
+            mDroppedFrames.incrementAndGet();
+        mBackIdx = previous & FRAME_INDEX_MASK;
+        LockSupport.unpark(mThread);
+
         if (mCamera != null)
             mCamera.addCallbackBuffer(mBuffer);
     }
@@ -351,26 +383,17 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         @Override
         public void run() {
             do {
-                boolean hasFrame = false;
-                synchronized (JavaCameraView.this) {
-                    try {
-                        while (!mCameraFrameReady && !mStopThread) {
-                            JavaCameraView.this.wait();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    if (mCameraFrameReady)
-                    {
-                        mChainIdx = 1 - mChainIdx;
-                        mCameraFrameReady = false;
-                        hasFrame = true;
-                    }
+                if ((mMiddleIdx.get() & FRAME_FRESH) == 0) {
+                    LockSupport.park(JavaCameraView.this);
+                    continue;
                 }
 
-                if (!mStopThread && hasFrame) {
-                    if (!mFrameChain[1 - mChainIdx].empty())
-                        deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);
+                /* Take the fresh middle slot, give back the one delivered last time */
+                mFrontIdx = mMiddleIdx.getAndSet(mFrontIdx) & FRAME_INDEX_MASK;
+
+                if (!mStopThread && !mFrameChain[mFrontIdx].empty()) {
+                    deliverAndDrawFrame(mCameraFrame[mFrontIdx]);
+                    mDeliveredFrames.incrementAndGet();
                 }
             } while (!mStopThread);
             Log.d(TAG, "Finish processing thread");
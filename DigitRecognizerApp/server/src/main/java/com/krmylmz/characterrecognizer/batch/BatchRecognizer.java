@@ -0,0 +1,369 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+import com.krmylmz.characterrecognizer.models.ConvNetClassifier;
+import com.krmylmz.characterrecognizer.preprocessing.PixelPreprocessor;
+import com.krmylmz.characterrecognizer.tracing.RecognitionEvents;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline recognition of every image in a folder (recursively), e.g. archives of scanned
+ * form fields with one digit per image. Runs on a plain JVM with the OpenCV Java bindings.
+ *
+ * A walker thread streams the folder entries (one open directory stream per nesting level)
+ * and hands files to a fixed decode pool, which decodes with Imgcodecs.imread (reduced
+ * grayscale when a reduction is given) and preprocesses with PixelPreprocessor in parallel.
+ * The calling thread forms fixed size batches for the classifier and streams results to a
+ * ResultSink. At most maxInFlight images are decoded but not yet classified, so memory
+ * stays flat however large the folder is.
+ *
+ * Decoding, preprocessing, batch formation and inference are reported to RecognitionEvents,
+ * main() installs the Flight Recorder events when the jfr module is on the classpath.
+ */
+public class BatchRecognizer {
+
+    // MNIST dataset property
+    private static final int PIXEL_WIDTH = 28;
+    private static final int DRAWING_WIDTH = 20;
+
+    private static final String[] EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp", ".tif", ".tiff", ".pgm", ".pbm"};
+
+    /**
+     * Counts and timing of a run.
+     */
+    public static class Stats {
+        private final long images;
+        private final long failed;
+        private final long nanos;
+
+        Stats(long images, long failed, long nanos) {
+            this.images = images;
+            this.failed = failed;
+            this.nanos = nanos;
+        }
+
+        public long getImages() {
+            return images;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        public double getImagesPerSecond() {
+            return nanos == 0 ? 0 : images / getSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d images (%d failed) in %.2f s, %.1f images/s",
+                    images, failed, getSeconds(), getImagesPerSecond());
+        }
+    }
+
+    // decoded and preprocessed image, pixels is null if decoding failed
+    private static class Item {
+        final String name;
+        final float[] pixels;
+
+        Item(String name, float[] pixels) {
+            this.name = name;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final Item END = new Item(null, null);
+
+    // one per decode thread, PixelPreprocessor keeps its buffers between calls
+    private static final ThreadLocal<PixelPreprocessor> PREPROCESSORS = new ThreadLocal<PixelPreprocessor>() {
+        @Override
+        protected PixelPreprocessor initialValue() {
+            return new PixelPreprocessor(PIXEL_WIDTH);
+        }
+    };
+
+    private final Classifier classifier;
+    private final int decodeThreads;
+    private final int batchSize;
+    private final int readFlags;
+    private final int maxInFlight;
+
+    /**
+     * @param classifier used from the calling thread only
+     * @param decodeThreads size of the decode/preprocess pool
+     * @param batchSize images per classifier call
+     * @param reduction 1, 2, 4 or 8; decode at 1/reduction size when the scans are large
+     */
+    public BatchRecognizer(Classifier classifier, int decodeThreads, int batchSize, int reduction) {
+        this.classifier = classifier;
+        this.decodeThreads = decodeThreads;
+        this.batchSize = batchSize;
+        this.maxInFlight = batchSize + decodeThreads * 2;
+
+        switch (reduction) {
+            case 1:
+                readFlags = Imgcodecs.IMREAD_GRAYSCALE;
+                break;
+            case 2:
+                readFlags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+                break;
+            case 4:
+                readFlags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+                break;
+            case 8:
+                readFlags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+                break;
+            default:
+                throw new IllegalArgumentException("reduction must be 1, 2, 4 or 8");
+        }
+    }
+
+    /**
+     * Recognizes every image under folder and writes the results to sink.
+     * Results come in completion order, not in folder order.
+     */
+    public Stats run(final File folder, ResultSink sink) throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(decodeThreads);
+        final BlockingQueue<Item> decoded = new ArrayBlockingQueue<>(maxInFlight + 1);
+        final Semaphore permits = new Semaphore(maxInFlight);
+
+        long start = System.nanoTime();
+
+        Thread walker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    walk(folder, "", pool, decoded, permits);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    pool.shutdown();
+                    try {
+                        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                        decoded.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "BatchRecognizer-walker");
+        walker.start();
+
+        int inputLength = PIXEL_WIDTH * PIXEL_WIDTH;
+        float[] batch = new float[batchSize * inputLength];
+        String[] names = new String[batchSize];
+        RecognitionEvents events = RecognitionEvents.get();
+        // from the first image of a batch until the batch is full
+        RecognitionEvents.Span forming = null;
+        int filled = 0;
+        long images = 0;
+        long failed = 0;
+
+        try {
+            Item item;
+            while ((item = decoded.take()) != END) {
+                permits.release();
+                ++images;
+
+                if (item.pixels == null) {
+                    ++failed;
+                    sink.write(item.name, null);
+                    continue;
+                }
+
+                if (filled == 0) {
+                    forming = events.begin(RecognitionEvents.BATCH);
+                }
+                System.arraycopy(item.pixels, 0, batch, filled * inputLength, inputLength);
+                names[filled++] = item.name;
+
+                if (filled == batchSize) {
+                    forming.batch(filled).dims(PIXEL_WIDTH, PIXEL_WIDTH).end();
+                    flush(batch, names, filled, sink);
+                    filled = 0;
+                }
+            }
+
+            if (filled > 0) {
+                forming.batch(filled).dims(PIXEL_WIDTH, PIXEL_WIDTH).end();
+                flush(batch, names, filled, sink);
+            }
+        } finally {
+            walker.interrupt();
+            pool.shutdownNow();
+        }
+
+        return new Stats(images, failed, System.nanoTime() - start);
+    }
+
+    private void flush(float[] batch, String[] names, int count, ResultSink sink) throws IOException {
+        RecognitionEvents.Span span = RecognitionEvents.get().begin(RecognitionEvents.INFERENCE);
+        Classification[] results = classifier.recognizeBatch(batch, count);
+        span.model(classifier.name()).batch(count).dims(PIXEL_WIDTH, PIXEL_WIDTH).end();
+        for (int i = 0; i < count; ++i) {
+            sink.write(names[i], results[i]);
+        }
+    }
+
+    private void walk(File dir, String prefix, ExecutorService pool,
+                      final BlockingQueue<Item> decoded, final Semaphore permits) throws InterruptedException {
+        // streams the entries instead of listing the whole folder into an array
+        DirectoryStream<Path> entries;
+        try {
+            entries = Files.newDirectoryStream(dir.toPath());
+        } catch (IOException e) {
+            // unreadable folder, skipped
+            return;
+        }
+
+        try {
+            for (Path entry : entries) {
+                walkEntry(entry.toFile(), prefix, pool, decoded, permits);
+            }
+        } catch (DirectoryIteratorException e) {
+            // folder became unreadable, the rest of it is skipped
+        } finally {
+            try {
+                entries.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private void walkEntry(final File file, String prefix, ExecutorService pool,
+                           final BlockingQueue<Item> decoded, final Semaphore permits) throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+
+        final String name = prefix + file.getName();
+        if (file.isDirectory()) {
+            walk(file, name + "/", pool, decoded, permits);
+            return;
+        }
+        if (!isImage(file.getName())) {
+            return;
+        }
+
+        // blocks while maxInFlight images wait for the classifier
+        permits.acquire();
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                float[] pixels = null;
+                try {
+                    pixels = decode(file);
+                } catch (RuntimeException e) {
+                    // counted as failed
+                }
+                // never blocks, the queue has room for every permit
+                decoded.add(new Item(name, pixels));
+            }
+        });
+    }
+
+    private static boolean isImage(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ENGLISH);
+        for (String extension : EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes and preprocesses one image to the model input, null if it can't be decoded.
+     */
+    private float[] decode(File file) {
+        RecognitionEvents events = RecognitionEvents.get();
+
+        RecognitionEvents.Span span = events.begin(RecognitionEvents.PREPROCESS);
+        Mat image = Imgcodecs.imread(file.getPath(), readFlags);
+        span.stage("decode").dims(image.cols(), image.rows()).end();
+        if (image.empty()) {
+            image.release();
+            return null;
+        }
+
+        span = events.begin(RecognitionEvents.PREPROCESS);
+        // dark digit on light paper -> black drawing on white background like drawView
+        Imgproc.threshold(image, image, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+        int width = image.cols();
+        int height = image.rows();
+        byte[] gray = new byte[width * height];
+        image.get(0, 0, gray);
+        image.release();
+
+        float[] pixels = new float[PIXEL_WIDTH * PIXEL_WIDTH];
+        PREPROCESSORS.get().toPixels(gray, width, height, 255, DRAWING_WIDTH, pixels, 0);
+        span.stage("threshold+pixels").dims(width, height).end();
+        return pixels;
+    }
+
+    /**
+     * Usage: BatchRecognizer weights.cnn imageFolder out.(csv|bin) [threads] [batchSize] [reduction]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: BatchRecognizer weights.cnn imageFolder out.(csv|bin) [threads] [batchSize] [reduction]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        RecognitionEvents.installJfr();
+
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        int reduction = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        Classifier classifier;
+        InputStream weights = new FileInputStream(args[0]);
+        try {
+            classifier = ConvNetClassifier.create(new File(args[0]).getName(), weights);
+        } finally {
+            weights.close();
+        }
+
+        ResultSink sink = args[2].endsWith(".bin")
+                ? new BinaryResultSink(new FileOutputStream(args[2]))
+                : new CsvResultSink(new FileWriter(args[2]));
+
+        Stats stats;
+        try {
+            stats = new BatchRecognizer(classifier, threads, batchSize, reduction).run(new File(args[1]), sink);
+        } finally {
+            sink.close();
+        }
+        System.out.println(stats);
+    }
+}
@@ -0,0 +1,81 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.detection.ConvNetDetector;
+import com.krmylmz.characterrecognizer.detection.Detection;
+import com.krmylmz.characterrecognizer.models.ConvNet;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Detection mode on a plain JVM: finds the digits anywhere in one large image with
+ * ConvNetDetector and prints them in reading order, optionally drawing the boxes.
+ * The weights are a fully convolutional CNN1 file, see export_cnn1 in train_model.ipynb.
+ */
+public class ImageDetector {
+
+    private ImageDetector() {
+    }
+
+    /**
+     * Usage: ImageDetector weights.cnn image digitHeight [annotated.png]
+     * Prints "label,conf,x,y,width,height" lines in image coordinates.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: ImageDetector weights.cnn image digitHeight [annotated.png]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        ConvNet net;
+        InputStream weights = new FileInputStream(args[0]);
+        try {
+            net = ConvNet.load(weights);
+        } finally {
+            weights.close();
+        }
+
+        Mat gray = Imgcodecs.imread(args[1], Imgcodecs.IMREAD_GRAYSCALE);
+        if (gray.empty()) {
+            throw new IOException("Can not read image " + args[1]);
+        }
+
+        ConvNetDetector detector = new ConvNetDetector(net);
+        List<Detection> detections;
+        try {
+            detections = detector.detect(gray, Integer.parseInt(args[2]));
+        } finally {
+            detector.release();
+        }
+
+        for (Detection detection : detections) {
+            Rect box = detection.getBox();
+            System.out.println(String.format(Locale.ENGLISH, "%s,%.3f,%d,%d,%d,%d", detection.getLabel(),
+                    detection.getConf(), box.x, box.y, box.width, box.height));
+        }
+
+        if (args.length > 3) {
+            for (Detection detection : detections) {
+                Rect box = detection.getBox();
+                Imgproc.rectangle(gray, box.tl(), box.br(), Scalar.all(0), 2);
+                Imgproc.putText(gray, detection.getLabel(), new Point(box.x, box.y - 4),
+                        Core.FONT_HERSHEY_SIMPLEX, 0.8, Scalar.all(0), 2);
+            }
+            Imgcodecs.imwrite(args[3], gray);
+        }
+        gray.release();
+    }
+}
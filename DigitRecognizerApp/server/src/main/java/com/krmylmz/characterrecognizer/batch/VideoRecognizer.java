@@ -0,0 +1,292 @@
+package com.krmylmz.characterrecognizer.batch;
+
+import com.krmylmz.characterrecognizer.camera.ChangeDetector;
+import com.krmylmz.characterrecognizer.detection.DigitLocalizer;
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.Classifier;
+import com.krmylmz.characterrecognizer.models.ConvNetClassifier;
+import com.krmylmz.characterrecognizer.tracing.RecognitionEvents;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Digit recognition of a local video file with VideoCapture. Frames are sampled every
+ * frameStride frames and, if enabled, only when the scene changed (ChangeDetector), then
+ * go through the camera style pipeline: DigitLocalizer finds the digits, which are
+ * preprocessed and classified in one batch.
+ *
+ * Runs on a plain JVM with the OpenCV Java bindings, DigitLocalizer preprocesses the
+ * digits with PixelPreprocessor.
+ *
+ * Decoding, localisation/preprocessing and inference run on three threads connected by
+ * bounded queues, so throughput is bounded by the slowest stage instead of their sum and
+ * at most QUEUE_SIZE frames wait between two stages.
+ */
+public class VideoRecognizer {
+
+    // MNIST dataset property, input size of DigitLocalizer.preprocess
+    private static final int PIXEL_WIDTH = 28;
+
+    private static final int QUEUE_SIZE = 4;
+
+    // mean absolute block difference of a sampled frame that counts as a scene change
+    private static final double CHANGE_THRESHOLD = 6.0;
+
+    /**
+     * Receives the digits of every processed frame, on the thread calling run().
+     */
+    public interface Listener {
+        /**
+         * @param frameIndex index of the frame in the video
+         * @param timestampMs position of the frame in the video
+         * @param boxes digit boxes in frame coordinates, left to right
+         * @param results results[classifier index][box index]
+         */
+        void onFrame(long frameIndex, double timestampMs, List<Rect> boxes, Classification[][] results);
+    }
+
+    // a sampled gray frame, or its localised and preprocessed digits
+    private static class FrameItem {
+        final long index;
+        final double timestampMs;
+        Mat gray;
+        List<Rect> boxes;
+        float[] batch;
+
+        FrameItem(long index, double timestampMs, Mat gray) {
+            this.index = index;
+            this.timestampMs = timestampMs;
+            this.gray = gray;
+        }
+    }
+
+    private static final FrameItem END = new FrameItem(-1, 0, null);
+
+    private final List<Classifier> classifiers;
+    private final int frameStride;
+    private final boolean sceneChangeOnly;
+
+    private volatile Exception stageError;
+
+    /**
+     * @param classifiers used from the thread calling run() only
+     * @param frameStride every frameStride-th frame is sampled, 1 for all frames
+     * @param sceneChangeOnly if true, sampled frames are skipped unless the scene changed
+     */
+    public VideoRecognizer(List<Classifier> classifiers, int frameStride, boolean sceneChangeOnly) {
+        this.classifiers = classifiers;
+        this.frameStride = Math.max(frameStride, 1);
+        this.sceneChangeOnly = sceneChangeOnly;
+    }
+
+    /**
+     * Recognizes the digits of videoPath, results are streamed to listener.
+     * @return number of processed frames
+     */
+    public long run(final String videoPath, Listener listener) throws IOException, InterruptedException {
+        final VideoCapture capture = new VideoCapture(videoPath);
+        if (!capture.isOpened()) {
+            throw new IOException("Can not open video " + videoPath);
+        }
+
+        final BlockingQueue<FrameItem> frames = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        final BlockingQueue<FrameItem> batches = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+        Thread decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decode(capture, frames);
+                } catch (Exception e) {
+                    stageError = e;
+                } finally {
+                    capture.release();
+                    finishStage(frames);
+                }
+            }
+        }, "VideoRecognizer-decode");
+
+        Thread preprocessor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    preprocess(frames, batches);
+                } catch (Exception e) {
+                    stageError = e;
+                } finally {
+                    finishStage(batches);
+                }
+            }
+        }, "VideoRecognizer-preprocess");
+
+        decoder.start();
+        preprocessor.start();
+
+        long processed = 0;
+        try {
+            FrameItem item;
+            while ((item = batches.take()) != END) {
+                Classification[][] results = new Classification[classifiers.size()][];
+                for (int c = 0; c < classifiers.size(); ++c) {
+                    if (item.boxes.isEmpty()) {
+                        results[c] = new Classification[0];
+                        continue;
+                    }
+                    Classifier classifier = classifiers.get(c);
+                    RecognitionEvents.Span span = RecognitionEvents.get().begin(RecognitionEvents.INFERENCE);
+                    results[c] = classifier.recognizeBatch(item.batch, item.boxes.size());
+                    span.model(classifier.name()).batch(item.boxes.size())
+                            .dims(PIXEL_WIDTH, PIXEL_WIDTH).end();
+                }
+                listener.onFrame(item.index, item.timestampMs, item.boxes, results);
+                ++processed;
+            }
+        } finally {
+            decoder.interrupt();
+            preprocessor.interrupt();
+            decoder.join();
+            preprocessor.join();
+        }
+
+        if (stageError != null) {
+            throw new IOException("Video recognition failed", stageError);
+        }
+        return processed;
+    }
+
+    private void decode(VideoCapture capture, BlockingQueue<FrameItem> frames) throws InterruptedException {
+        ChangeDetector changeDetector = new ChangeDetector(CHANGE_THRESHOLD);
+        Mat frame = new Mat();
+
+        try {
+            for (long index = 0; ; ++index) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+
+                // grab() does not convert the skipped frames
+                if (index % frameStride != 0) {
+                    if (!capture.grab()) {
+                        break;
+                    }
+                    continue;
+                }
+                if (!capture.read(frame)) {
+                    break;
+                }
+
+                Mat gray = new Mat();
+                Imgproc.cvtColor(frame, gray, Imgproc.COLOR_BGR2GRAY);
+
+                if (sceneChangeOnly && !changeDetector.hasChanged(gray)) {
+                    gray.release();
+                    continue;
+                }
+
+                frames.put(new FrameItem(index, capture.get(Videoio.CAP_PROP_POS_MSEC), gray));
+            }
+        } finally {
+            frame.release();
+            changeDetector.release();
+        }
+    }
+
+    private void preprocess(BlockingQueue<FrameItem> frames, BlockingQueue<FrameItem> batches) throws InterruptedException {
+        DigitLocalizer localizer = new DigitLocalizer();
+        RecognitionEvents events = RecognitionEvents.get();
+
+        try {
+            FrameItem item;
+            while ((item = frames.take()) != END) {
+                RecognitionEvents.Span span = events.begin(RecognitionEvents.PREPROCESS);
+                item.boxes = localizer.locate(item.gray);
+                span.stage("locate").dims(item.gray.cols(), item.gray.rows()).end();
+
+                // one batch of every digit of the frame
+                span = events.begin(RecognitionEvents.BATCH);
+                item.batch = localizer.preprocess(item.gray, item.boxes);
+                span.batch(item.boxes.size()).dims(PIXEL_WIDTH, PIXEL_WIDTH).end();
+                item.gray.release();
+                item.gray = null;
+                batches.put(item);
+            }
+        } finally {
+            localizer.release();
+        }
+    }
+
+    // ends a stage: on a normal end of stream every queued item is still delivered,
+    // only a failed or interrupted run drops them to make room for the end marker
+    private void finishStage(BlockingQueue<FrameItem> queue) {
+        if (stageError == null && !Thread.currentThread().isInterrupted()) {
+            try {
+                queue.put(END);
+                return;
+            } catch (InterruptedException e) {
+                // the consumer is gone
+            }
+        }
+        putQuietly(queue, END);
+    }
+
+    private static void putQuietly(BlockingQueue<FrameItem> queue, FrameItem item) {
+        // the consumer may be gone, drop what is left to make room for the end marker
+        while (!queue.offer(item)) {
+            FrameItem dropped = queue.poll();
+            if (dropped != null && dropped.gray != null) {
+                dropped.gray.release();
+            }
+        }
+    }
+
+    /**
+     * Usage: VideoRecognizer weights.cnn video [frameStride] [sceneChangeOnly]
+     * Prints "frame,timestampMs,digits" lines.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: VideoRecognizer weights.cnn video [frameStride] [sceneChangeOnly]");
+            System.exit(1);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        RecognitionEvents.installJfr();
+
+        int stride = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        boolean sceneChangeOnly = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        Classifier classifier;
+        InputStream weights = new FileInputStream(args[0]);
+        try {
+            classifier = ConvNetClassifier.create("", weights);
+        } finally {
+            weights.close();
+        }
+
+        new VideoRecognizer(Collections.singletonList(classifier), stride, sceneChangeOnly)
+                .run(args[1], new Listener() {
+                    @Override
+                    public void onFrame(long frameIndex, double timestampMs, List<Rect> boxes, Classification[][] results) {
+                        StringBuilder digits = new StringBuilder();
+                        for (Classification res : results[0]) {
+                            digits.append(res.getLabel() == null ? "?" : res.getLabel());
+                        }
+                        System.out.println(String.format(Locale.ENGLISH, "%d,%.1f,%s", frameIndex, timestampMs, digits));
+                    }
+                });
+    }
+}
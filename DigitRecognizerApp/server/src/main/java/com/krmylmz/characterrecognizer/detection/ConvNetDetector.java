@@ -0,0 +1,171 @@
+package com.krmylmz.characterrecognizer.detection;
+
+import com.krmylmz.characterrecognizer.models.Classification;
+import com.krmylmz.characterrecognizer.models.ConvNet;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds digits anywhere in a large canvas or photo with a single fully convolutional pass.
+ * The image is downscaled so digits are about 20px high like in MNIST, then ConvNet runs the
+ * conv stack once over the whole image and evaluates the dense layers as convolutions over
+ * the feature map. Every score map position is the classification of one 28x28 window,
+ * getStride() pixels apart, so no window is cropped and classified on its own.
+ *
+ * MNIST models have no background class, so only windows with enough ink in their 20x20
+ * center and little ink on their border are kept, then overlapping ones are suppressed.
+ *
+ * The net must be fully convolutional (valid convolutions only), like build_fcn_model in
+ * train_model.ipynb whose export_cnn1 writes the weights file. Run with batch.ImageDetector.
+ */
+public class ConvNetDetector {
+
+    // MNIST dataset property
+    private static final int DRAWING_WIDTH = 20;
+
+    private static final float MIN_CONF = 0.9f;
+    private static final float NMS_THRESHOLD = 0.3f;
+
+    // ink ratio limits of the 20x20 window center and of the border around it
+    private static final double MIN_CENTER_INK = 0.05;
+    private static final double MAX_BORDER_INK = 0.02;
+
+    private final ConvNet mNet;
+
+    // Reused buffers
+    private final Mat mScaled = new Mat();
+    private final Mat mBinary = new Mat();
+
+    public ConvNetDetector(ConvNet net) {
+        mNet = net;
+    }
+
+    /**
+     * @param gray single channel image, dark digits on light background
+     * @param digitHeight approximate digit height in gray, in pixels
+     * @return detections in gray coordinates, left to right
+     */
+    public List<Detection> detect(Mat gray, int digitHeight) {
+        double scale = DRAWING_WIDTH * 1.0 / digitHeight;
+        Imgproc.resize(gray, mScaled, new Size(gray.cols() * scale, gray.rows() * scale), 0, 0, Imgproc.INTER_AREA);
+
+        // ink 255 on 0 background, like the model input
+        Imgproc.threshold(mScaled, mBinary, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+
+        int height = mBinary.rows();
+        int width = mBinary.cols();
+        int window = mNet.getInputSize();
+        List<Detection> detections = new ArrayList<>();
+        if (height < window || width < window) {
+            return detections;
+        }
+
+        byte[] data = new byte[height * width];
+        mBinary.get(0, 0, data);
+
+        // pixels for the net and a summed area table of ink for the window checks
+        float[] pixels = new float[height * width];
+        int[] inkSum = new int[(height + 1) * (width + 1)];
+        for (int y = 0; y < height; ++y) {
+            int rowSum = 0;
+            for (int x = 0; x < width; ++x) {
+                int v = data[y * width + x] & 0xff;
+                pixels[y * width + x] = v / 255.0f;
+                rowSum += (v != 0) ? 1 : 0;
+                inkSum[(y + 1) * (width + 1) + x + 1] = inkSum[y * (width + 1) + x + 1] + rowSum;
+            }
+        }
+
+        float[] scores = mNet.run(pixels, height, width);
+        int gridHeight = mNet.getOutputHeight();
+        int gridWidth = mNet.getOutputWidth();
+        int numClasses = mNet.getNumClasses();
+        int stride = mNet.getStride();
+        int margin = (window - DRAWING_WIDTH) / 2;
+
+        List<Rect> boxes = new ArrayList<>();
+        List<Float> confs = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+
+        for (int gy = 0; gy < gridHeight; ++gy) {
+            for (int gx = 0; gx < gridWidth; ++gx) {
+                int x = gx * stride;
+                int y = gy * stride;
+
+                int windowInk = inkIn(inkSum, width, x, y, window, window);
+                int centerInk = inkIn(inkSum, width, x + margin, y + margin, DRAWING_WIDTH, DRAWING_WIDTH);
+                int borderArea = window * window - DRAWING_WIDTH * DRAWING_WIDTH;
+                if (centerInk < MIN_CENTER_INK * DRAWING_WIDTH * DRAWING_WIDTH
+                        || windowInk - centerInk > MAX_BORDER_INK * borderArea) {
+                    continue;
+                }
+
+                int offset = (gy * gridWidth + gx) * numClasses;
+                int best = 0;
+                for (int i = 1; i < numClasses; ++i) {
+                    if (scores[offset + i] > scores[offset + best]) {
+                        best = i;
+                    }
+                }
+                if (scores[offset + best] < MIN_CONF) {
+                    continue;
+                }
+
+                boxes.add(new Rect((int) ((x + margin) / scale), (int) ((y + margin) / scale),
+                        (int) (DRAWING_WIDTH / scale), (int) (DRAWING_WIDTH / scale)));
+                confs.add(scores[offset + best]);
+                labels.add(best);
+            }
+        }
+
+        if (boxes.isEmpty()) {
+            return detections;
+        }
+
+        MatOfRect boxMat = new MatOfRect();
+        boxMat.fromList(boxes);
+        MatOfFloat confMat = new MatOfFloat();
+        confMat.fromList(confs);
+        MatOfInt indices = new MatOfInt();
+        Dnn.NMSBoxes(boxMat, confMat, MIN_CONF, NMS_THRESHOLD, indices);
+
+        for (int index : indices.toArray()) {
+            detections.add(new Detection(boxes.get(index), Classification.labelOf(labels.get(index)), confs.get(index)));
+        }
+        boxMat.release();
+        confMat.release();
+        indices.release();
+
+        // reading order
+        Collections.sort(detections, new Comparator<Detection>() {
+            @Override
+            public int compare(Detection a, Detection b) {
+                return a.getBox().x - b.getBox().x;
+            }
+        });
+        return detections;
+    }
+
+    private static int inkIn(int[] inkSum, int width, int x, int y, int w, int h) {
+        int stride = width + 1;
+        return inkSum[(y + h) * stride + x + w] - inkSum[y * stride + x + w]
+                - inkSum[(y + h) * stride + x] + inkSum[y * stride + x];
+    }
+
+    public void release() {
+        mScaled.release();
+        mBinary.release();
+    }
+}
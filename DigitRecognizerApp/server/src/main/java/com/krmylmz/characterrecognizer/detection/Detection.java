@@ -0,0 +1,31 @@
+package com.krmylmz.characterrecognizer.detection;
+
+import org.opencv.core.Rect;
+
+/**
+ * A digit found in an image: its box, label and confidence.
+ */
+public class Detection {
+
+    private final Rect box;
+    private final String label;
+    private final float conf;
+
+    public Detection(Rect box, String label, float conf) {
+        this.box = box;
+        this.label = label;
+        this.conf = conf;
+    }
+
+    public Rect getBox() {
+        return box;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public float getConf() {
+        return conf;
+    }
+}